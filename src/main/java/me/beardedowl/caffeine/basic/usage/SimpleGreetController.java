@@ -2,27 +2,41 @@
 package me.beardedowl.caffeine.basic.usage;
 
 import java.time.Duration;
-import java.time.Instant;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.TimeUnit;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
 
 import jakarta.json.Json;
 import jakarta.json.JsonObject;
 import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.QueryParam;
 
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import me.beardedowl.caffeine.common.CacheDump;
+import me.beardedowl.caffeine.common.CacheRegistry;
+import me.beardedowl.caffeine.common.CacheSettings;
+import me.beardedowl.caffeine.common.CacheSnapshots;
+import me.beardedowl.caffeine.common.CacheWarmer;
+import me.beardedowl.caffeine.common.HotKeyRefresher;
+import me.beardedowl.caffeine.common.InvalidationBus;
+import me.beardedowl.caffeine.common.JitteredExpiry;
+import me.beardedowl.caffeine.common.RemovalLogger;
+import me.beardedowl.caffeine.common.SnapshotCodec;
 import me.beardedowl.caffeine.singleton.cache.CacheSingleton;
 import me.beardedowl.caffeine.singleton.cache.UserDTO;
+import me.beardedowl.caffeine.singleton.cache.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,54 +54,84 @@ public class SimpleGreetController {
 
     private static Logger LOGGER = LoggerFactory.getLogger(SimpleGreetController.class.getName());
 
-    private LoadingCache<String,String> messageCache = Caffeine.newBuilder()
-            .expireAfterWrite(2, TimeUnit.MINUTES)
-            .refreshAfterWrite(1,TimeUnit.MINUTES)
+    private static final String CACHE_NAME = "simple-greet-message";
+
+    // app.cache.simple-greet-message.* (see CacheSettings), refreshed after 1 minute unless configured otherwise
+    private static final CacheSettings SETTINGS = CacheRegistry.getInstance().settings(CACHE_NAME)
+            .orRefreshAfterWrite(Duration.ofMinutes(1));
+
+    // 2 minutes on average unless configured otherwise, jittered so that entries loaded together do not expire together
+    private final JitteredExpiry<String,String> messageExpiry =
+            JitteredExpiry.of(SETTINGS.getExpireAfterWrite().orElse(Duration.ofMinutes(2)));
+
+    private LoadingCache<String,String> messageCache = SETTINGS.newBuilder(CACHE_NAME, messageExpiry, null)
             /**
              *  Eviction         : eviction means removal due to the policy
              *  Invalidation     : invalidation means manual removal by the caller
              *  Removal          : removal occurs as a consequence of invalidation or eviction
+             *  Removals are counted per cause and logged as one line every few seconds (see RemovalLogger)
              */
-            .evictionListener((key,value,reason) -> {
-                LOGGER.warn("Expiring cache key '{}' with value '{}' --- '{}'",key,value,reason);
-            })
-            .removalListener((key,value,reason) -> {
-                LOGGER.warn("Removing cache key '{}' with value '{}' --- '{}'",key,value,reason) ;
-            })
-            .recordStats()
+            .removalListener(RemovalLogger.<String, String>of(CACHE_NAME))
             .build(this::makeMessage);
 
+    private UserRepository repository = UserRepository.getInstance();
+
+    // Refreshes the keys being read before they expire, started with the bean
+    private HotKeyRefresher<String,String> refresher;
+
+    /**
+     * The cache is registered (with its size gauge), snapshotted, put on the invalidation bus and preloaded here rather than next to the builder so
+     * that it is the cache of the bean itself and not the one of a CDI proxy
+     */
+    @PostConstruct
+    void bindCache(){
+        CacheRegistry.getInstance().register(CACHE_NAME, messageCache, messageExpiry);
+        refresher = HotKeyRefresher.start(CACHE_NAME, messageCache);
+        CacheSnapshots.getInstance().register(CACHE_NAME, messageCache, SnapshotCodec.STRING, SnapshotCodec.STRING);
+        InvalidationBus.getInstance().register(CACHE_NAME, messageCache, SnapshotCodec.STRING);
+        CacheWarmer.getInstance().register(CACHE_NAME, messageCache, messageCache::get);
+    }
+
+    @PreDestroy
+    void stopRefresher(){
+        refresher.close();
+    }
+
     /**
-     * Converts the cache into a string and returns it to user
+     * Creates the bean, hence restores its cache, while the container starts and before the server takes traffic
+     */
+    void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event){
+        LOGGER.info("Simple greet cache ready with {} entries",messageCache.estimatedSize());
+    }
+
+    public LoadingCache<String,String> getMessageCache(){
+        return messageCache;
+    }
+
+    /**
+     * Streams one page of the cache as newline delimited JSON (see CacheDump)
      * Note that this does not refresh the cache BUT it removes the entries which have been marked as expired
-     * Also, I believe that both the key and value objects should have toString() overridden
-     * @return  Cache data in a key-value pair
+     * @param prefix    : Only keys starting with this prefix are returned
+     * @param cursor    : X-Next-Cursor header of the previous page
+     * @param limit     : Maximum number of entries in the page
+     * @return  Cache data in key-value pairs, one per line
      */
     @GET
     @Path("/cache/message/data")
-    public String getMessageCacheData(){
-        Instant start = Instant.now();
-        String fName = "getMessageCacheData";
-        try{
-            return messageCache.asMap().entrySet().toString();
-        } finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} operation completed in {} ms", fName,duration.toMillis());
-        }
+    @Produces(CacheDump.NDJSON)
+    public Response getMessageCacheData(@QueryParam("prefix") String prefix,
+                                        @QueryParam("cursor") String cursor,
+                                        @QueryParam("limit") Integer limit){
+        return CacheDump.page(messageCache, prefix, cursor, limit);
     }
 
     @GET
     @Path("/cache/singleton/message/data")
-    @Produces(MediaType.APPLICATION_JSON)
-    public Set<Map.Entry<String, List<UserDTO>>> getSingletonCacheMessageCacheData(){
-        Instant start = Instant.now();
-        String fName = "getSingletonCacheMessageCacheData";
-        try{
-            return CacheSingleton.getInstance().getMessageCache().asMap().entrySet();
-        } finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} operation completed in {} ms", fName,duration.toMillis());
-        }
+    @Produces(CacheDump.NDJSON)
+    public Response getSingletonCacheMessageCacheData(@QueryParam("prefix") String prefix,
+                                                      @QueryParam("cursor") String cursor,
+                                                      @QueryParam("limit") Integer limit){
+        return CacheDump.page(CacheSingleton.getInstance().getMessageCache(), prefix, cursor, limit);
     }
 
     /**
@@ -99,20 +143,16 @@ public class SimpleGreetController {
     @Path("/cache/message/stats")
     @Produces(MediaType.APPLICATION_JSON)
     public JsonObject getMessageCacheStats(){
-        Instant start = Instant.now();
-        String fName = "getMessageCacheStats";
-        try{
-            return Json.createObjectBuilder()
-                    .add("cacheHashcode", CacheSingleton.getInstance().getMessageCache().hashCode())
-                    .add("evictionCount",CacheSingleton.getInstance().getMessageCache().stats().evictionCount())
-                    .add("averageLoadPenalty",CacheSingleton.getInstance().getMessageCache().stats().averageLoadPenalty())
-                    .add("hitCount",CacheSingleton.getInstance().getMessageCache().stats().hitCount())
-                    .add("hitRate",CacheSingleton.getInstance().getMessageCache().stats().hitRate())
-                    .build();
-        } finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} operation completed in {} ms", fName,duration.toMillis());
-        }
+        // A single snapshot, the same numbers are exported continuously under /metrics (cache=message)
+        Cache<String, List<UserDTO>> cache = CacheSingleton.getInstance().getMessageCache();
+        CacheStats stats = cache.stats();
+        return Json.createObjectBuilder()
+                .add("cacheHashcode", cache.hashCode())
+                .add("evictionCount",stats.evictionCount())
+                .add("averageLoadPenalty",stats.averageLoadPenalty())
+                .add("hitCount",stats.hitCount())
+                .add("hitRate",stats.hitRate())
+                .build();
     }
 
     /**
@@ -123,28 +163,21 @@ public class SimpleGreetController {
     @Path("/{name}")
     @GET
     public String getMessage(@PathParam("name") String name) {
-        Instant start = Instant.now();
-        String fName = "getMessage" ;
-        try{
-            LOGGER.info("Greeting {}",name);
-            return messageCache.get(name);
-        } finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} operation completed in {} ms", fName, duration.toMillis());
-        }
+        LOGGER.info("Greeting {}",name);
+        refresher.recordRead(name);
+        return messageCache.get(name);
     }
 
     /**
-     * Simulates the behavior of a function which takes "too" much time to calculate data
+     * Simulates the behavior of a function which takes "too" much time to calculate data : it looks the name up in the
+     * UserRepository (3 s by default, see LocalUserRepository)
      * Cachine is supposed to reduce the calls to this function
      * @param message   : String
      * @return  Customised message
-     * @throws  InterruptedException
      */
-    private String makeMessage(String message) throws InterruptedException {
+    private String makeMessage(String message) {
         LOGGER.warn("Could not find value for {} key in cache. Building....",message);
-        LOGGER.info("Making current thread sleep for {} seconds",3);
-        Thread.sleep(3000);
+        LOGGER.info("Found {} users named {}",repository.findByName(message).size(),message);
         return String.format("%s + %s",message,message.length());
     }
 
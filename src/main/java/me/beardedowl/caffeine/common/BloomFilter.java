@@ -0,0 +1,81 @@
+package me.beardedowl.caffeine.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter for strings : mightContain() never answers false for a string which was put(), and answers
+ * true for a string which was not with a probability close to the false positive rate it was sized for (it grows
+ * when more strings than expected are put).
+ *
+ * The bits live in an AtomicLongArray, put() sets them with compare-and-set, so readers and writers never block.
+ * The k bit positions come from two 64-bit hashes of the characters (Kirsch-Mitzenmacher double hashing).
+ */
+public final class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions    : Number of strings the filter is sized for
+     * @param falsePositiveRate     : Wanted probability of a false positive once expectedInsertions strings are in
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate){
+        if(expectedInsertions < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1){
+            throw new IllegalArgumentException("expectedInsertions must be positive and falsePositiveRate in (0, 1)");
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) / 64));
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+    }
+
+    public void put(CharSequence value){
+        long hash1 = hash(value, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(value, 0xC2B2AE3D27D4EB4FL) | 1;
+        for(int i = 0; i < hashCount; i++){
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long word = words.get(index);
+            while((word & mask) == 0){
+                if(words.compareAndSet(index, word, word | mask)){
+                    break;
+                }
+                word = words.get(index);
+            }
+        }
+    }
+
+    public boolean mightContain(CharSequence value){
+        long hash1 = hash(value, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(value, 0xC2B2AE3D27D4EB4FL) | 1;
+        for(int i = 0; i < hashCount; i++){
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if((words.get((int) (bit >>> 6)) & (1L << bit)) == 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int hashCount(){
+        return hashCount;
+    }
+
+    public long bitCount(){
+        return bitCount;
+    }
+
+    private static long hash(CharSequence value, long seed){
+        long hash = seed ^ value.length();
+        for(int i = 0; i < value.length(); i++){
+            hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+        }
+        // Final mix (splitmix64), the multiply-xor loop alone leaves the high bits poorly mixed
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+}
@@ -0,0 +1,165 @@
+package me.beardedowl.caffeine.common;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.PUT;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Looks at and tunes the caches of the CacheRegistry while the application runs, without a restart.
+ * Changes last until the next restart, microprofile-config.properties is not modified.
+ *
+ * curl http://localhost:8081/admin/caches
+ * curl -X PUT "http://localhost:8081/admin/caches/message?maximumSize=50000&expireAfterWriteSeconds=300"
+ * curl -X DELETE "http://localhost:8081/admin/caches/message?prefix=Jo"
+ *
+ * Not protected : it must not be reachable from outside, like /metrics.
+ */
+@Path("/admin/caches")
+@ApplicationScoped
+public class CacheAdminResource {
+
+    /**
+     * @return  Every registered cache with its size and current policy
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonObject getCaches(){
+        CacheRegistry registry = CacheRegistry.getInstance();
+        JsonArrayBuilder caches = Json.createArrayBuilder();
+        for(String name : registry.names()){
+            caches.add(describe(registry, name));
+        }
+        return Json.createObjectBuilder().add("caches", caches).build();
+    }
+
+    @GET
+    @Path("/{name}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getCache(@PathParam("name") String name){
+        CacheRegistry registry = CacheRegistry.getInstance();
+        if(!registry.names().contains(name)){
+            return notFound(name);
+        }
+        return Response.ok(describe(registry, name)).build();
+    }
+
+    /**
+     * Changes the policy of a cache, only the parameters given are changed
+     * @param maximumSize               : Maximum number of entries, or maximum weight for a cache bounded by weight
+     * @param expireAfterWriteSeconds   : Time to live
+     * @param refreshAfterWriteSeconds  : Age after which a read reloads an entry
+     * @return  The cache with its new policy. 400 when nothing is given, a value is not positive or the cache does not
+     *          have that policy (an unbounded cache gets no maximum), nothing is changed then. 404 for an unknown cache
+     */
+    @PUT
+    @Path("/{name}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response updateCache(@PathParam("name") String name,
+                                @QueryParam("maximumSize") Long maximumSize,
+                                @QueryParam("expireAfterWriteSeconds") Long expireAfterWriteSeconds,
+                                @QueryParam("refreshAfterWriteSeconds") Long refreshAfterWriteSeconds){
+        CacheRegistry registry = CacheRegistry.getInstance();
+        if(!registry.names().contains(name)){
+            return notFound(name);
+        }
+        if(maximumSize == null && expireAfterWriteSeconds == null && refreshAfterWriteSeconds == null){
+            return badRequest("Expected at least one of maximumSize, expireAfterWriteSeconds, refreshAfterWriteSeconds");
+        }
+        if(isNegative(maximumSize) || isNotPositive(expireAfterWriteSeconds) || isNotPositive(refreshAfterWriteSeconds)){
+            return badRequest("maximumSize must be positive or 0, the durations must be positive");
+        }
+        // Every policy is checked before any is changed, so that a request is applied entirely or not at all
+        Policy<Object, Object> policy = registry.get(name).policy();
+        if(maximumSize != null && policy.eviction().isEmpty()){
+            return badRequest("Cache " + name + " is not bounded");
+        }
+        if(expireAfterWriteSeconds != null && registry.getExpireAfterWrite(name).isEmpty()){
+            return badRequest("The expiry of cache " + name + " cannot be changed");
+        }
+        if(refreshAfterWriteSeconds != null && policy.refreshAfterWrite().isEmpty()){
+            return badRequest("Cache " + name + " does not refresh");
+        }
+        try{
+            if(maximumSize != null){
+                registry.setMaximum(name, maximumSize);
+            }
+            if(expireAfterWriteSeconds != null){
+                registry.setExpireAfterWrite(name, Duration.ofSeconds(expireAfterWriteSeconds));
+            }
+            if(refreshAfterWriteSeconds != null){
+                registry.setRefreshAfterWrite(name, Duration.ofSeconds(refreshAfterWriteSeconds));
+            }
+        }catch (IllegalStateException e){
+            return badRequest(e.getMessage());
+        }
+        return Response.ok(describe(registry, name)).build();
+    }
+
+    /**
+     * Invalidates entries of a cache on every instance of the application (see InvalidationBus)
+     * @param prefix    : Only the keys whose string form starts with it, every key when not given
+     * @return  204. 404 when the cache is not on the invalidation bus
+     */
+    @DELETE
+    @Path("/{name}")
+    public Response invalidateCache(@PathParam("name") String name,
+                                    @QueryParam("prefix") String prefix){
+        InvalidationBus bus = InvalidationBus.getInstance();
+        if(!bus.names().contains(name)){
+            return notFound(name);
+        }
+        if(prefix == null){
+            bus.invalidateAll(name);
+        }
+        else{
+            bus.invalidatePrefix(name, prefix);
+        }
+        return Response.noContent().build();
+    }
+
+    private static JsonObject describe(CacheRegistry registry, String name){
+        Cache<Object, Object> cache = registry.get(name);
+        Policy<Object, Object> policy = cache.policy();
+        JsonObjectBuilder json = Json.createObjectBuilder()
+                .add("name", name)
+                .add("estimatedSize", cache.estimatedSize());
+        policy.eviction().ifPresent(eviction -> json
+                .add(eviction.isWeighted() ? "maximumWeight" : "maximumSize", eviction.getMaximum()));
+        registry.getExpireAfterWrite(name).ifPresent(expiry -> json.add("expireAfterWriteSeconds", expiry.toSeconds()));
+        Optional<Duration> refresh = policy.refreshAfterWrite().map(refreshes -> refreshes.getRefreshesAfter());
+        refresh.ifPresent(duration -> json.add("refreshAfterWriteSeconds", duration.toSeconds()));
+        return json.add("recordingStats", policy.isRecordingStats()).build();
+    }
+
+    private static boolean isNegative(Long value){
+        return value != null && value < 0;
+    }
+
+    private static boolean isNotPositive(Long value){
+        return value != null && value <= 0;
+    }
+
+    private static Response notFound(String name){
+        return Response.status(Response.Status.NOT_FOUND).entity("No cache named " + name).build();
+    }
+
+    private static Response badRequest(String message){
+        return Response.status(Response.Status.BAD_REQUEST).entity(message).build();
+    }
+}
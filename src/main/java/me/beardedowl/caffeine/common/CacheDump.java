@@ -0,0 +1,141 @@
+package me.beardedowl.caffeine.common;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.Cache;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/**
+ * Dumps the content of a cache one page at a time as newline delimited JSON, one {"key":..,"value":..} per line.
+ *
+ * Converting asMap().entrySet() to a String (or letting Jackson serialize it) builds the whole cache in memory before
+ * the first byte goes out. Here the keys are walked once and only the page being served is kept
+ *  - Keys are ordered by their String form. A page holds the `limit` smallest keys greater than `cursor`
+ *  - Only keys starting with `prefix` are considered
+ *  - `limit` is capped by app.cache.dump.max-entries
+ *  - When there are more keys, the header X-Next-Cursor holds the cursor to ask for the next page
+ * Values are read with Policy.getIfPresentQuietly(), so dumping a cache neither counts as hits nor changes the
+ * eviction order. Entries removed while a page is streamed are skipped.
+ *
+ * curl "http://localhost:8081/sanchay/cache/message/data?prefix=jo&limit=50"
+ * curl "http://localhost:8081/sanchay/cache/message/data?prefix=jo&limit=50&cursor=john"
+ */
+public final class CacheDump {
+
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    static final String MAX_ENTRIES_PROPERTY = "app.cache.dump.max-entries";
+    static final int DEFAULT_MAX_ENTRIES = 1000;
+    static final int DEFAULT_LIMIT = 100;
+
+    private static final int MAX_ENTRIES = ConfigProvider.getConfig()
+            .getOptionalValue(MAX_ENTRIES_PROPERTY, Integer.class)
+            .orElse(DEFAULT_MAX_ENTRIES);
+
+    private static final ObjectWriter WRITER = new ObjectMapper()
+            .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .writer()
+            .withRootValueSeparator("\n");
+
+    private CacheDump(){
+    }
+
+    /**
+     * Line written for every entry
+     */
+    public static final class Entry {
+        private final String key;
+        private final Object value;
+
+        Entry(String key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+    }
+
+    public static <K, V> Response page(Cache<K, V> cache, String prefix, String cursor, Integer limit){
+        return page(cache, prefix, cursor, limit, Function.identity());
+    }
+
+    /**
+     * @param cache         : Cache to dump
+     * @param prefix        : Only keys starting with this are returned, can be null
+     * @param cursor        : Value of X-Next-Cursor from the previous page, null for the first page
+     * @param limit         : Entries per page, null for the default. Capped by app.cache.dump.max-entries
+     * @param valueMapper   : Converts a cached value into what should be serialized (for example unwraps Optionals)
+     * @return  200 response streaming the page
+     */
+    public static <K, V> Response page(Cache<K, V> cache, String prefix, String cursor, Integer limit,
+                                       Function<? super V, ?> valueMapper){
+        int pageSize = Math.max(1, Math.min(limit == null ? DEFAULT_LIMIT : limit, MAX_ENTRIES));
+        List<K> keys = selectKeys(cache, prefix, cursor, pageSize + 1);
+        String nextCursor = null;
+        if(keys.size() > pageSize){
+            keys = keys.subList(0, pageSize);
+            nextCursor = String.valueOf(keys.get(pageSize - 1));
+        }
+
+        List<K> page = keys;
+        StreamingOutput body = output -> {
+            try(SequenceWriter writer = WRITER.writeValues(output)){
+                for(K key : page){
+                    V value = cache.policy().getIfPresentQuietly(key);
+                    if(value != null){
+                        writer.write(new Entry(String.valueOf(key), valueMapper.apply(value)));
+                    }
+                }
+            }
+            output.flush();
+        };
+        return Response.ok(body, NDJSON)
+                .header(NEXT_CURSOR_HEADER, nextCursor)
+                .build();
+    }
+
+    /**
+     * Walks the keys once and keeps the `count` smallest ones after the cursor in a bounded max-heap,
+     * so memory is proportional to the page and not to the cache
+     * @return  Selected keys, in ascending order
+     */
+    static <K> List<K> selectKeys(Cache<K, ?> cache, String prefix, String cursor, int count){
+        Comparator<K> byName = Comparator.comparing(String::valueOf);
+        PriorityQueue<K> largestFirst = new PriorityQueue<>(count + 1, byName.reversed());
+        for(K key : cache.asMap().keySet()){
+            String name = String.valueOf(key);
+            if(prefix != null && !name.startsWith(prefix)){
+                continue;
+            }
+            if(cursor != null && name.compareTo(cursor) <= 0){
+                continue;
+            }
+            largestFirst.offer(key);
+            if(largestFirst.size() > count){
+                largestFirst.poll();
+            }
+        }
+        List<K> keys = new ArrayList<>(largestFirst);
+        keys.sort(byName);
+        return keys;
+    }
+}
@@ -0,0 +1,141 @@
+package me.beardedowl.caffeine.common;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import io.helidon.metrics.api.RegistryFactory;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+import org.eclipse.microprofile.metrics.Timer;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Binds Caffeine's statistics to the MicroProfile application registry, so every named cache can be scraped from
+ * /metrics instead of having each controller build its own stats JSON.
+ *
+ * Usage while building a cache
+ *  Caffeine.newBuilder()
+ *          .recordStats(CacheMetrics.statsCounter("message"))
+ *          .build();
+ *  CacheMetrics.bindSize("message", cache);
+ *
+ * Metrics are tagged with cache=name
+ *  cache.hits / cache.misses                      : counters
+ *  cache.loads (result=success|failure)           : timers, which keep a histogram of the load time
+ *  cache.evictions (cause=SIZE|EXPIRED|COLLECTED) : counters
+ *  cache.size                                     : gauge on Cache.estimatedSize()
+ *
+ * Cache.stats() is still answered by Caffeine's own ConcurrentStatsCounter, so it keeps working when metrics are
+ * disabled (Helidon then hands out no-op metrics).
+ */
+public final class CacheMetrics implements StatsCounter {
+
+    static final String CACHE_TAG = "cache";
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer loadSuccess;
+    private final Timer loadFailure;
+    private final Map<RemovalCause, Counter> evictions = new EnumMap<>(RemovalCause.class);
+    private final StatsCounter local = new ConcurrentStatsCounter();
+
+    CacheMetrics(MetricRegistry registry, String cacheName){
+        Tag cache = new Tag(CACHE_TAG, cacheName);
+        this.hits = registry.counter(metadata("cache.hits", "Number of lookups which found a value", MetricType.COUNTER, MetricUnits.NONE), cache);
+        this.misses = registry.counter(metadata("cache.misses", "Number of lookups which did not find a value", MetricType.COUNTER, MetricUnits.NONE), cache);
+        Metadata loads = metadata("cache.loads", "Time spent loading new values", MetricType.TIMER, MetricUnits.NANOSECONDS);
+        this.loadSuccess = registry.timer(loads, cache, new Tag("result", "success"));
+        this.loadFailure = registry.timer(loads, cache, new Tag("result", "failure"));
+        Metadata evicted = metadata("cache.evictions", "Number of entries evicted by the cache policy", MetricType.COUNTER, MetricUnits.NONE);
+        for(RemovalCause cause : RemovalCause.values()){
+            if(cause.wasEvicted()){
+                evictions.put(cause, registry.counter(evicted, cache, new Tag("cause", cause.name())));
+            }
+        }
+    }
+
+    /**
+     * @param cacheName : Name used for the cache tag, must be unique per cache
+     * @return  Supplier to pass to Caffeine.recordStats()
+     */
+    public static Supplier<StatsCounter> statsCounter(String cacheName){
+        return () -> new CacheMetrics(applicationRegistry(), cacheName);
+    }
+
+    /**
+     * Registers the cache.size gauge. Has to be called once the cache has been built
+     * @param cacheName : Same name as the one given to statsCounter()
+     * @param cache     : Cache to observe
+     */
+    public static void bindSize(String cacheName, Cache<?, ?> cache){
+        applicationRegistry().gauge(
+                metadata("cache.size", "Estimated number of entries in the cache", MetricType.GAUGE, MetricUnits.NONE),
+                cache, Cache::estimatedSize, new Tag(CACHE_TAG, cacheName));
+    }
+
+    /**
+     * The caches are created in field initializers and in CacheSingleton, outside of CDI, so the registry is taken from
+     * Helidon's RegistryFactory. It is the same application registry that gets injected into beans
+     */
+    static MetricRegistry applicationRegistry(){
+        return RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+    }
+
+    /**
+     * The type has to be set, Helidon compares the metadata of every registration with the first one and
+     * rejects a second registration (another cache, or a second instance of the same one) whose metadata differs
+     */
+    static Metadata metadata(String name, String description, MetricType type, String unit){
+        return Metadata.builder()
+                .withName(name)
+                .withDescription(description)
+                .withType(type)
+                .withUnit(unit)
+                .build();
+    }
+
+    @Override
+    public void recordHits(int count) {
+        local.recordHits(count);
+        hits.inc(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        local.recordMisses(count);
+        misses.inc(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        local.recordLoadSuccess(loadTime);
+        loadSuccess.update(Duration.ofNanos(loadTime));
+    }
+
+    @Override
+    public void recordLoadFailure(long loadTime) {
+        local.recordLoadFailure(loadTime);
+        loadFailure.update(Duration.ofNanos(loadTime));
+    }
+
+    @Override
+    public void recordEviction(int weight, RemovalCause cause) {
+        local.recordEviction(weight, cause);
+        evictions.get(cause).inc();
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return local.snapshot();
+    }
+}
@@ -0,0 +1,191 @@
+package me.beardedowl.caffeine.common;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The caches of the application by name, each of them sized, expired and measured on its own (see CacheSettings).
+ *
+ * A cache is built by its owner, from settings(name).newBuilder(...) plus its own listeners and loader, then
+ * registered here. Other code looks it up by name
+ *  Cache<String, List<UserDTO>> cache = CacheRegistry.getInstance().get("message");
+ *
+ * Registering a cache binds its size gauge (cache.size, cache=<name>). Registering again under the same name replaces
+ * the cache, as happens when a bean owning one is created again.
+ *
+ * The bound, the time to live and the refresh interval of a registered cache can be changed while it is in use
+ * (see CacheAdminResource). A cache built with a variable expiry must be registered with its WriteExpiry for its time
+ * to live to be changed.
+ */
+public final class CacheRegistry {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(CacheRegistry.class.getName());
+
+    private static CacheRegistry cacheRegistry = new CacheRegistry(ConfigProvider.getConfig());
+
+    private final Config config;
+    private final Map<String, Cache<?, ?>> caches = new ConcurrentHashMap<>();
+    private final Map<String, AsyncCache<?, ?>> asyncCaches = new ConcurrentHashMap<>();
+    private final Map<String, WriteExpiry<?, ?>> expiries = new ConcurrentHashMap<>();
+
+    private CacheRegistry(Config config){
+        this.config = config;
+    }
+
+    public static CacheRegistry getInstance(){
+        return cacheRegistry;
+    }
+
+    /**
+     * @return  Settings of the cache, from app.cache.<name>.*
+     */
+    public CacheSettings settings(String name){
+        return CacheSettings.read(config, name);
+    }
+
+    public <K, V> Cache<K, V> register(String name, Cache<K, V> cache){
+        caches.put(name, cache);
+        asyncCaches.remove(name);
+        expiries.remove(name);
+        CacheMetrics.bindSize(name, cache);
+        LOGGER.info("Registered cache {} ({})",name,settings(name));
+        return cache;
+    }
+
+    /**
+     * Registers the cache and its synchronous view, get(name) returns the view
+     */
+    public <K, V> AsyncCache<K, V> register(String name, AsyncCache<K, V> cache){
+        register(name, cache.synchronous());
+        asyncCaches.put(name, cache);
+        return cache;
+    }
+
+    /**
+     * @param expiry    : Expiry the cache was built with
+     */
+    public <K, V> Cache<K, V> register(String name, Cache<K, V> cache, WriteExpiry<K, V> expiry){
+        register(name, cache);
+        expiries.put(name, expiry);
+        return cache;
+    }
+
+    /**
+     * @param expiry    : Expiry the cache was built with
+     */
+    public <K, V> AsyncCache<K, V> register(String name, AsyncCache<K, V> cache, WriteExpiry<K, V> expiry){
+        register(name, cache);
+        expiries.put(name, expiry);
+        return cache;
+    }
+
+    /**
+     * Changes the maximum size, or the maximum weight of a cache bounded by weight. Entries over the new bound are
+     * evicted right away
+     * @throws IllegalStateException    when the cache is not bounded
+     */
+    public void setMaximum(String name, long maximum){
+        get(name).policy().eviction()
+                .orElseThrow(() -> new IllegalStateException("Cache " + name + " is not bounded"))
+                .setMaximum(maximum);
+        LOGGER.info("Maximum of cache {} set to {}",name,maximum);
+    }
+
+    /**
+     * Changes the time to live. With a fixed expiry it applies to every entry from the time it was written. With a
+     * variable expiry new writes get the new duration and the entries already present have their remaining time
+     * moved by the difference (an entry 30 s old going from 2 min to 1 min has 30 s left)
+     * @throws IllegalStateException    when the cache does not expire, or its expiry was not registered
+     */
+    public void setExpireAfterWrite(String name, Duration expireAfterWrite){
+        Cache<Object, Object> cache = get(name);
+        Optional<Policy.FixedExpiration<Object, Object>> fixed = cache.policy().expireAfterWrite();
+        if(fixed.isPresent()){
+            fixed.get().setExpiresAfter(expireAfterWrite);
+        }
+        else{
+            WriteExpiry<?, ?> expiry = expiries.get(name);
+            Policy.VarExpiration<Object, Object> variable = cache.policy().expireVariably().orElse(null);
+            if(expiry == null || variable == null){
+                throw new IllegalStateException("The expiry of cache " + name + " cannot be changed");
+            }
+            long deltaNanos = expireAfterWrite.toNanos() - expiry.getExpireAfterWriteNanos();
+            expiry.setExpireAfterWrite(expireAfterWrite);
+            for(Object key : cache.asMap().keySet()){
+                OptionalLong remaining = variable.getExpiresAfter(key, TimeUnit.NANOSECONDS);
+                if(remaining.isPresent()){
+                    variable.setExpiresAfter(key, Math.max(0, remaining.getAsLong() + deltaNanos), TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+        LOGGER.info("Expire after write of cache {} set to {}",name,expireAfterWrite);
+    }
+
+    /**
+     * @throws IllegalStateException    when the cache does not refresh
+     */
+    public void setRefreshAfterWrite(String name, Duration refreshAfterWrite){
+        get(name).policy().refreshAfterWrite()
+                .orElseThrow(() -> new IllegalStateException("Cache " + name + " does not refresh"))
+                .setRefreshesAfter(refreshAfterWrite);
+        LOGGER.info("Refresh after write of cache {} set to {}",name,refreshAfterWrite);
+    }
+
+    /**
+     * @return  Time to live of new entries, empty when the cache does not expire or its expiry was not registered
+     */
+    public Optional<Duration> getExpireAfterWrite(String name){
+        Cache<?, ?> cache = get(name);
+        Optional<Duration> fixed = cache.policy().expireAfterWrite().map(expiration -> expiration.getExpiresAfter());
+        if(fixed.isPresent()){
+            return fixed;
+        }
+        return Optional.ofNullable(expiries.get(name)).map(expiry -> Duration.ofNanos(expiry.getExpireAfterWriteNanos()));
+    }
+
+    /**
+     * @throws IllegalArgumentException when no cache is registered under this name
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> Cache<K, V> get(String name){
+        Cache<?, ?> cache = caches.get(name);
+        if(cache == null){
+            throw new IllegalArgumentException("No cache named " + name + ", known caches are " + names());
+        }
+        return (Cache<K, V>) cache;
+    }
+
+    /**
+     * @throws IllegalArgumentException when no asynchronous cache is registered under this name
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> AsyncCache<K, V> getAsync(String name){
+        AsyncCache<?, ?> cache = asyncCaches.get(name);
+        if(cache == null){
+            throw new IllegalArgumentException("No asynchronous cache named " + name);
+        }
+        return (AsyncCache<K, V>) cache;
+    }
+
+    /**
+     * @return  Names of the registered caches, sorted
+     */
+    public Set<String> names(){
+        return Collections.unmodifiableSet(new TreeSet<>(caches.keySet()));
+    }
+}
@@ -0,0 +1,214 @@
+package me.beardedowl.caffeine.common;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import com.github.benmanes.caffeine.cache.Weigher;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Tuning of one named cache, read from microprofile-config.properties under app.cache.<name>.
+ *  spec                         : Caffeine specification, e.g. maximumSize=10000,expireAfterWrite=2m,recordStats
+ *                                 Only maximumSize, maximumWeight, expireAfterWrite, refreshAfterWrite and recordStats
+ *                                 can be used. The properties below take precedence over it
+ *  maximum-size                 : maximum number of entries
+ *  maximum-weight               : maximum total weight, takes precedence over maximum-size. Only for caches built with
+ *                                 a weigher
+ *  expire-after-write-seconds   : time to live of an entry, the cache's own default when unset
+ *  refresh-after-write-seconds  : age after which a read reloads the entry in the background. Only for caches built
+ *                                 with a loader, Caffeine refuses to build any other cache with it
+ *  record-stats                 : false stops recording hits, misses and loads (and exporting them to /metrics)
+ *
+ * Entries expire through a WriteExpiry, a variable expiry, so that the duration can be changed at runtime and snapshots
+ * keep the time entries have left.
+ *
+ * With no spec, record-stats defaults to true. With a spec, stats are recorded when it says recordStats.
+ */
+public final class CacheSettings {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(CacheSettings.class.getName());
+
+    static final String PREFIX = "app.cache.";
+    static final Set<String> SPEC_OPTIONS = Set.of("maximumSize", "maximumWeight", "expireAfterWrite", "refreshAfterWrite", "recordStats");
+
+    private final Optional<Long> maximumSize;
+    private final Optional<Long> maximumWeight;
+    private final Optional<Duration> expireAfterWrite;
+    private final Optional<Duration> refreshAfterWrite;
+    private final boolean recordStats;
+
+    public CacheSettings(Optional<Long> maximumSize, Optional<Long> maximumWeight, Optional<Duration> expireAfterWrite,
+                         Optional<Duration> refreshAfterWrite, boolean recordStats){
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+        this.expireAfterWrite = expireAfterWrite;
+        this.refreshAfterWrite = refreshAfterWrite;
+        this.recordStats = recordStats;
+    }
+
+    /**
+     * @param config    : Where app.cache.<name>.* is read
+     * @param name      : Name of the cache
+     */
+    public static CacheSettings read(Config config, String name){
+        String prefix = PREFIX + name + ".";
+        CacheSettings spec = config.getOptionalValue(prefix + "spec", String.class)
+                .map(CacheSettings::parse)
+                .orElse(new CacheSettings(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), true));
+        return new CacheSettings(
+                or(config.getOptionalValue(prefix + "maximum-size", Long.class), spec.maximumSize),
+                or(config.getOptionalValue(prefix + "maximum-weight", Long.class), spec.maximumWeight),
+                or(config.getOptionalValue(prefix + "expire-after-write-seconds", Long.class).map(Duration::ofSeconds), spec.expireAfterWrite),
+                or(config.getOptionalValue(prefix + "refresh-after-write-seconds", Long.class).map(Duration::ofSeconds), spec.refreshAfterWrite),
+                config.getOptionalValue(prefix + "record-stats", Boolean.class).orElse(spec.recordStats));
+    }
+
+    /**
+     * @param spec  : Caffeine specification, checked by CaffeineSpec.parse() first
+     * @throws IllegalArgumentException when the spec is invalid or uses an option other than SPEC_OPTIONS
+     */
+    static CacheSettings parse(String spec){
+        CaffeineSpec.parse(spec);
+        Map<String, String> options = new HashMap<>();
+        for(String option : spec.split(",")){
+            if(option.isBlank()){
+                continue;
+            }
+            String[] keyAndValue = option.split("=", 2);
+            String key = keyAndValue[0].trim();
+            if(!SPEC_OPTIONS.contains(key)){
+                throw new IllegalArgumentException(key + " is not supported in a cache spec, only " + SPEC_OPTIONS + " are");
+            }
+            options.put(key, keyAndValue.length > 1 ? keyAndValue[1].trim() : "");
+        }
+        return new CacheSettings(
+                Optional.ofNullable(options.get("maximumSize")).map(Long::parseLong),
+                Optional.ofNullable(options.get("maximumWeight")).map(Long::parseLong),
+                Optional.ofNullable(options.get("expireAfterWrite")).map(CacheSettings::parseDuration),
+                Optional.ofNullable(options.get("refreshAfterWrite")).map(CacheSettings::parseDuration),
+                options.containsKey("recordStats"));
+    }
+
+    /**
+     * Same formats as CaffeineSpec : a number followed by d, h, m or s, or an ISO-8601 duration (PT2M)
+     */
+    private static Duration parseDuration(String value){
+        if(value.startsWith("P") || value.startsWith("p")){
+            return Duration.parse(value);
+        }
+        long amount = Long.parseLong(value.substring(0, value.length() - 1));
+        switch (Character.toLowerCase(value.charAt(value.length() - 1))){
+            case 'd': return Duration.ofDays(amount);
+            case 'h': return Duration.ofHours(amount);
+            case 'm': return Duration.ofMinutes(amount);
+            case 's': return Duration.ofSeconds(amount);
+            default: throw new IllegalArgumentException("Unknown duration unit in " + value);
+        }
+    }
+
+    private static <T> Optional<T> or(Optional<T> first, Optional<T> second){
+        return first.isPresent() ? first : second;
+    }
+
+    /**
+     * @return  These settings, with refreshAfterWrite set to the given duration unless it is configured
+     */
+    public CacheSettings orRefreshAfterWrite(Duration defaultRefreshAfterWrite){
+        return new CacheSettings(maximumSize, maximumWeight, expireAfterWrite,
+                or(refreshAfterWrite, Optional.of(defaultRefreshAfterWrite)), recordStats);
+    }
+
+    /**
+     * @return  These settings, with maximumSize set to the given bound unless a bound (size or weight) is configured
+     */
+    public CacheSettings orMaximumSize(long defaultMaximumSize){
+        return new CacheSettings(maximumWeight.isPresent() ? maximumSize : or(maximumSize, Optional.of(defaultMaximumSize)),
+                maximumWeight, expireAfterWrite, refreshAfterWrite, recordStats);
+    }
+
+    /**
+     * @return  Expiry with the configured time to live, or the given one when none is configured
+     */
+    public <K, V> WriteExpiry<K, V> newExpiry(Duration defaultExpireAfterWrite){
+        return new WriteExpiry<>(expireAfterWrite.orElse(defaultExpireAfterWrite));
+    }
+
+    /**
+     * Builder running on the LoaderExecutor with these settings applied, listeners and the loader are left to the caller
+     * @param name                      : Name of the cache, for the stats and the logs
+     * @param defaultExpireAfterWrite   : Time to live when expire-after-write-seconds is not set
+     * @param weigher                   : Used with maximum-weight, null when the cache can only be bounded by size
+     */
+    public <K, V> Caffeine<K, V> newBuilder(String name, Duration defaultExpireAfterWrite, Weigher<? super K, ? super V> weigher){
+        return newBuilder(name, newExpiry(defaultExpireAfterWrite), weigher);
+    }
+
+    /**
+     * Same as above with an expiry built by the caller, so that it can be registered with the cache and changed later
+     * @param expiry    : Expiry of the cache, its duration is the caller's choice (see newExpiry() and JitteredExpiry)
+     */
+    public <K, V> Caffeine<K, V> newBuilder(String name, WriteExpiry<K, V> expiry, Weigher<? super K, ? super V> weigher){
+        Caffeine<K, V> builder = Caffeine.newBuilder()
+                .executor(LoaderExecutor.getInstance().getExecutor())
+                .expireAfter(expiry);
+        if(maximumWeight.isPresent() && weigher != null){
+            if(maximumSize.isPresent()){
+                LOGGER.warn("Both {}{}.maximum-size and maximum-weight are set, using maximum-weight",PREFIX,name);
+            }
+            builder.maximumWeight(maximumWeight.get()).weigher(weigher);
+        }
+        else if(maximumSize.isPresent()){
+            if(maximumWeight.isPresent()){
+                LOGGER.warn("{}{}.maximum-weight is ignored, the cache has no weigher, using maximum-size",PREFIX,name);
+            }
+            builder.maximumSize(maximumSize.get());
+        }
+        else if(maximumWeight.isPresent()){
+            LOGGER.warn("{}{}.maximum-weight is ignored as the cache has no weigher, it is unbounded, set maximum-size instead",PREFIX,name);
+        }
+        else{
+            LOGGER.warn("Neither {}{}.maximum-size nor maximum-weight is set, the cache is unbounded",PREFIX,name);
+        }
+        refreshAfterWrite.ifPresent(builder::refreshAfterWrite);
+        if(recordStats){
+            builder.recordStats(CacheMetrics.statsCounter(name));
+        }
+        return builder;
+    }
+
+    public Optional<Long> getMaximumSize() {
+        return maximumSize;
+    }
+
+    public Optional<Long> getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public Optional<Duration> getExpireAfterWrite() {
+        return expireAfterWrite;
+    }
+
+    public Optional<Duration> getRefreshAfterWrite() {
+        return refreshAfterWrite;
+    }
+
+    public boolean isRecordStats() {
+        return recordStats;
+    }
+
+    @Override
+    public String toString() {
+        return "maximumSize=" + maximumSize.map(String::valueOf).orElse("-")
+                + ", maximumWeight=" + maximumWeight.map(String::valueOf).orElse("-")
+                + ", expireAfterWrite=" + expireAfterWrite.map(String::valueOf).orElse("default")
+                + ", refreshAfterWrite=" + refreshAfterWrite.map(String::valueOf).orElse("-")
+                + ", recordStats=" + recordStats;
+    }
+}
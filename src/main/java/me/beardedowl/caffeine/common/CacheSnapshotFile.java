@@ -0,0 +1,166 @@
+package me.beardedowl.caffeine.common;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the live entries of a cache, with the time each of them has left to live, to a memory-mapped file and
+ * reads them back into a cache.
+ *
+ * Layout (big endian)
+ *  int     MAGIC
+ *  int     VERSION
+ *  long    wall clock time of the write, epoch milliseconds
+ *  int     number of entries
+ *  per entry
+ *      long    remaining time to live in nanoseconds, -1 when the entry does not expire
+ *      key     as written by the key codec
+ *      value   as written by the value codec
+ *
+ * The file is written next to the target under a temporary name and moved over it once complete, so a crash while
+ * writing leaves the previous snapshot in place. On restore the time spent between the write and the restore is taken
+ * off every entry, entries which expired in between are skipped.
+ */
+public final class CacheSnapshotFile {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(CacheSnapshotFile.class.getName());
+
+    static final int MAGIC = 0x43534e50;  // "CSNP"
+    // Also covers the formats of the codecs : 2 since UserDTO ids are longs
+    static final int VERSION = 2;
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final long NO_EXPIRY = -1;
+
+    private CacheSnapshotFile(){
+    }
+
+    /**
+     * @return  Number of entries written
+     */
+    public static <K, V> int write(Path file, Cache<K, V> cache, SnapshotCodec<K> keyCodec, SnapshotCodec<V> valueCodec) throws IOException {
+        Policy<K, V> policy = cache.policy();
+        List<K> keys = new ArrayList<>();
+        List<V> values = new ArrayList<>();
+        List<Long> remaining = new ArrayList<>();
+        long size = HEADER_BYTES;
+        for(Map.Entry<K, V> entry : cache.asMap().entrySet()){
+            long timeToLive = remainingNanos(policy, entry.getKey());
+            if(timeToLive == 0){
+                continue;
+            }
+            long entrySize;
+            try{
+                entrySize = Long.BYTES + keyCodec.sizeOf(entry.getKey()) + valueCodec.sizeOf(entry.getValue());
+            }catch (IllegalArgumentException e){
+                LOGGER.debug("Not writing key {} to the snapshot : {}",entry.getKey(),e.getMessage());
+                continue;
+            }
+            if(size + entrySize > Integer.MAX_VALUE){
+                LOGGER.warn("Snapshot {} is full, {} entries out of {} written",file,keys.size(),cache.estimatedSize());
+                break;
+            }
+            size += entrySize;
+            keys.add(entry.getKey());
+            values.add(entry.getValue());
+            remaining.add(timeToLive);
+        }
+
+        long writtenAt = System.currentTimeMillis();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(writtenAt);
+            buffer.putInt(keys.size());
+            for(int i = 0; i < keys.size(); i++){
+                buffer.putLong(remaining.get(i));
+                keyCodec.write(buffer, keys.get(i));
+                valueCodec.write(buffer, values.get(i));
+            }
+            buffer.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return keys.size();
+    }
+
+    /**
+     * Puts the entries of the snapshot into the cache, keeping their remaining time to live when the cache uses a
+     * variable expiry (see WriteExpiry). Keys already present in the cache are left alone.
+     * @return  Number of entries restored, 0 when there is no snapshot or it cannot be read
+     */
+    public static <K, V> int restore(Path file, Cache<K, V> cache, SnapshotCodec<K> keyCodec, SnapshotCodec<V> valueCodec) throws IOException {
+        if(!Files.isRegularFile(file)){
+            return 0;
+        }
+        Optional<Policy.VarExpiration<K, V>> varExpiration = cache.policy().expireVariably();
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+                LOGGER.warn("Ignoring {}, it is not a cache snapshot or was written by another version",file);
+                return 0;
+            }
+            long elapsedNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - buffer.getLong()));
+            int count = buffer.getInt();
+            int restored = 0;
+            for(int i = 0; i < count; i++){
+                long timeToLive = buffer.getLong();
+                K key = keyCodec.read(buffer);
+                V value = valueCodec.read(buffer);
+                if(timeToLive != NO_EXPIRY){
+                    timeToLive -= elapsedNanos;
+                    if(timeToLive <= 0){
+                        continue;
+                    }
+                }
+                if(timeToLive != NO_EXPIRY && varExpiration.isPresent()){
+                    if(varExpiration.get().putIfAbsent(key, value, timeToLive, TimeUnit.NANOSECONDS) == null){
+                        restored++;
+                    }
+                }
+                else if(cache.asMap().putIfAbsent(key, value) == null){
+                    restored++;
+                }
+            }
+            return restored;
+        }catch (BufferUnderflowException e){
+            LOGGER.warn("Snapshot {} is truncated, only part of it was restored",file);
+            return 0;
+        }
+    }
+
+    /**
+     * @return  Nanoseconds the entry has left, NO_EXPIRY when the cache does not expire entries, 0 when already expired
+     */
+    private static <K, V> long remainingNanos(Policy<K, V> policy, K key){
+        Optional<Policy.VarExpiration<K, V>> varExpiration = policy.expireVariably();
+        if(varExpiration.isPresent()){
+            OptionalLong expiresAfter = varExpiration.get().getExpiresAfter(key, TimeUnit.NANOSECONDS);
+            return expiresAfter.isPresent() ? Math.max(0, expiresAfter.getAsLong()) : 0;
+        }
+        Optional<Policy.FixedExpiration<K, V>> afterWrite = policy.expireAfterWrite();
+        if(afterWrite.isPresent()){
+            OptionalLong age = afterWrite.get().ageOf(key, TimeUnit.NANOSECONDS);
+            return age.isPresent() ? Math.max(0, afterWrite.get().getExpiresAfter(TimeUnit.NANOSECONDS) - age.getAsLong()) : 0;
+        }
+        return NO_EXPIRY;
+    }
+}
@@ -0,0 +1,133 @@
+package me.beardedowl.caffeine.common;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the registered caches warm across restarts. Each cache is restored from its snapshot file when it is
+ * registered, then written back every interval and once more when the JVM shuts down (see CacheSnapshotFile).
+ *
+ * Configured from microprofile-config.properties
+ *  app.cache.snapshot.directory         : where the <cache name>.snapshot files go, snapshots are disabled when unset
+ *  app.cache.snapshot.interval-seconds  : time between two writes, 60 by default
+ *
+ * The caches register themselves when they are built. Their owners are created while the CDI container starts
+ * (they observe @Initialized(ApplicationScoped.class)), which happens before the web server opens its port, so the
+ * restore is over by the time the first request comes in.
+ */
+public final class CacheSnapshots {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(CacheSnapshots.class.getName());
+
+    static final String DIRECTORY_PROPERTY = "app.cache.snapshot.directory";
+    static final String INTERVAL_PROPERTY = "app.cache.snapshot.interval-seconds";
+    static final String FILE_SUFFIX = ".snapshot";
+
+    private static final class Registration<K, V> {
+        final Cache<K, V> cache;
+        final SnapshotCodec<K> keyCodec;
+        final SnapshotCodec<V> valueCodec;
+
+        Registration(Cache<K, V> cache, SnapshotCodec<K> keyCodec, SnapshotCodec<V> valueCodec) {
+            this.cache = cache;
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
+        }
+    }
+
+    private static CacheSnapshots cacheSnapshots = new CacheSnapshots(ConfigProvider.getConfig());
+
+    // null when snapshots are disabled
+    private final Path directory;
+    private final Map<String, Registration<?, ?>> registrations = new ConcurrentHashMap<>();
+
+    private CacheSnapshots(Config config){
+        Optional<String> directory = config.getOptionalValue(DIRECTORY_PROPERTY, String.class);
+        if(directory.isEmpty()){
+            LOGGER.info("{} is not set, cache snapshots are disabled",DIRECTORY_PROPERTY);
+            this.directory = null;
+            return;
+        }
+        this.directory = Paths.get(directory.get());
+        long interval = config.getOptionalValue(INTERVAL_PROPERTY, Long.class).orElse(60L);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::writeAll, interval, interval, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            scheduler.shutdownNow();
+            writeAll();
+        }, "cache-snapshot-shutdown"));
+    }
+
+    public static CacheSnapshots getInstance(){
+        return cacheSnapshots;
+    }
+
+    public boolean isEnabled(){
+        return directory != null;
+    }
+
+    /**
+     * Restores the cache from its last snapshot and includes it in the following writes.
+     * Does nothing when snapshots are disabled
+     * @param cacheName     : Name of the snapshot file, must be unique per cache
+     * @param cache         : Cache to restore and write, it should use a WriteExpiry to keep the remaining time to live
+     * @param keyCodec      : Encoding of the keys
+     * @param valueCodec    : Encoding of the values
+     */
+    public <K, V> void register(String cacheName, Cache<K, V> cache, SnapshotCodec<K> keyCodec, SnapshotCodec<V> valueCodec){
+        if(directory == null){
+            return;
+        }
+        Instant start = Instant.now();
+        try{
+            int restored = CacheSnapshotFile.restore(fileOf(cacheName), cache, keyCodec, valueCodec);
+            LOGGER.info("Restored {} entries of cache {} in {} ms",restored,cacheName,Duration.between(start, Instant.now()).toMillis());
+        }catch (IOException e){
+            LOGGER.warn("Could not restore cache {}, starting cold",cacheName,e);
+        }
+        registrations.put(cacheName, new Registration<>(cache, keyCodec, valueCodec));
+    }
+
+    void writeAll(){
+        try{
+            Files.createDirectories(directory);
+        }catch (IOException e){
+            LOGGER.warn("Could not create {}, no snapshot written",directory,e);
+            return;
+        }
+        registrations.forEach(this::write);
+    }
+
+    private <K, V> void write(String cacheName, Registration<K, V> registration){
+        try{
+            int written = CacheSnapshotFile.write(fileOf(cacheName), registration.cache, registration.keyCodec, registration.valueCodec);
+            LOGGER.debug("Wrote {} entries of cache {}",written,cacheName);
+        }catch (IOException | RuntimeException e){
+            LOGGER.warn("Could not write the snapshot of cache {}",cacheName,e);
+        }
+    }
+
+    private Path fileOf(String cacheName){
+        return directory.resolve(cacheName + FILE_SUFFIX);
+    }
+}
@@ -0,0 +1,337 @@
+package me.beardedowl.caffeine.common;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Preloads the caches while the instance starts, so that it does not take traffic with a hit rate of 0. Until every
+ * cache has loaded the target coverage of its keys, the readiness check (CacheWarmupCheck) reports the instance as not
+ * ready and the load balancer keeps it out.
+ *
+ * The keys of a cache are the ones configured for it followed by its hottest keys of the previous run, which are
+ * written to <directory>/<cache name>.keys every interval and when the JVM shuts down. Keys already in the cache (e.g.
+ * restored from a snapshot, see CacheSnapshots) are not loaded again.
+ *
+ * Usage, once the cache is built
+ *  CacheWarmer.getInstance().register("greet-message", messageCache, messageCache::get);
+ * or, when the load completes a future (e.g. an AsyncCache whose loader goes through a MicroBatcher)
+ *  CacheWarmer.getInstance().registerAsync("message", asyncCache.synchronous(), key -> asyncCache.get(key, ...));
+ *
+ * At most concurrency loads are in flight at once for all the caches together, so that the backend is not flooded by
+ * every instance of a deployment starting together. The loads given to register() run on the LoaderExecutor, so they
+ * must not wait for another task of the LoaderExecutor (a batch being loaded, for example) : with as many of them as
+ * threads in the pool, that task would never run. Such loads go through registerAsync(), which only starts them and
+ * takes the next key once their future completes, without holding a thread meanwhile.
+ *
+ * Configured from microprofile-config.properties
+ *  app.cache.<name>.warmup-keys          : keys always preloaded, comma separated
+ *  app.cache.warmup.directory            : where the hottest keys are kept between runs, not kept when unset
+ *  app.cache.warmup.top-keys             : number of hottest keys kept per cache, 1000 by default
+ *  app.cache.warmup.interval-seconds     : time between two writes of the hottest keys, 60 by default
+ *  app.cache.warmup.concurrency          : loads running at once, 16 by default
+ *  app.cache.warmup.target-coverage      : part of the keys to load before being ready, 0.9 by default
+ *  app.cache.warmup.timeout-seconds      : the instance is ready after this long even if the coverage is not reached
+ *                                          (a backend down should not keep every instance out), 300 by default
+ */
+public final class CacheWarmer {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(CacheWarmer.class.getName());
+
+    static final String DIRECTORY_PROPERTY = "app.cache.warmup.directory";
+    static final String TOP_KEYS_PROPERTY = "app.cache.warmup.top-keys";
+    static final String INTERVAL_PROPERTY = "app.cache.warmup.interval-seconds";
+    static final String CONCURRENCY_PROPERTY = "app.cache.warmup.concurrency";
+    static final String TARGET_COVERAGE_PROPERTY = "app.cache.warmup.target-coverage";
+    static final String TIMEOUT_PROPERTY = "app.cache.warmup.timeout-seconds";
+    static final String FILE_SUFFIX = ".keys";
+
+    private static CacheWarmer cacheWarmer = create(ConfigProvider.getConfig());
+
+    private final class Warmup {
+        final String cacheName;
+        final Cache<String, ?> cache;
+        final Function<String, ? extends CompletionStage<?>> loader;
+        final List<String> keys;
+        final AtomicInteger loaded = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        // Keys neither loaded nor failed yet
+        final AtomicInteger remaining;
+        final long startNanos = System.nanoTime();
+
+        Warmup(String cacheName, Cache<String, ?> cache, Function<String, ? extends CompletionStage<?>> loader, List<String> keys) {
+            this.cacheName = cacheName;
+            this.cache = cache;
+            this.loader = loader;
+            this.keys = keys;
+            this.remaining = new AtomicInteger(keys.size());
+        }
+
+        double coverage(){
+            return keys.isEmpty() ? 1 : (double) loaded.get() / keys.size();
+        }
+
+        boolean isDone(){
+            return remaining.get() == 0;
+        }
+
+        void feed(){
+            long deadline = startNanos + timeout.toNanos();
+            for(String key : keys){
+                if(System.nanoTime() - deadline > 0){
+                    LOGGER.warn("Warm-up of cache {} timed out after {} of {} keys",cacheName,loaded.get(),keys.size());
+                    return;
+                }
+                if(cache.asMap().containsKey(key)){
+                    loaded.incrementAndGet();
+                    finished();
+                    continue;
+                }
+                permits.acquireUninterruptibly();
+                CompletionStage<?> load;
+                try{
+                    load = loader.apply(key);
+                }catch (RuntimeException e){
+                    load = CompletableFuture.failedFuture(e);
+                }
+                load.whenComplete((value, error) -> loaded(key, error));
+            }
+        }
+
+        private void loaded(String key, Throwable error){
+            if(error == null){
+                loaded.incrementAndGet();
+            }
+            else{
+                failed.incrementAndGet();
+                LOGGER.debug("Could not preload {} in cache {}",key,cacheName,error);
+            }
+            permits.release();
+            finished();
+        }
+
+        private void finished(){
+            if(remaining.decrementAndGet() == 0){
+                LOGGER.info("Warm-up of cache {} done in {} ms : {} of {} keys loaded",cacheName,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),loaded.get(),keys.size());
+            }
+        }
+    }
+
+    private final Function<String, List<String>> configuredKeys;
+    // null when the hottest keys are not kept
+    private final Path directory;
+    private final int topKeys;
+    private final Semaphore permits;
+    private final double targetCoverage;
+    private final Duration timeout;
+    // Where the loads given to register() run
+    private final Executor executor;
+    // Only hands the keys out, one cache after the other, the loads themselves run on the executor
+    private final ExecutorService feeder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cache-warmup");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Warmup> warmups = new ConcurrentHashMap<>();
+
+    /**
+     * @param configuredKeys    : Keys always preloaded, per cache name
+     * @param directory         : Where the hottest keys are kept between runs, null to not keep them
+     * @param topKeys           : Number of hottest keys kept per cache
+     * @param concurrency       : Loads running at once
+     * @param targetCoverage    : Part of the keys of every cache to load before being ready, from 0 to 1
+     * @param timeout           : Time after which the instance is ready whatever the coverage
+     * @param executor          : Where the loads given to register() run
+     */
+    CacheWarmer(Function<String, List<String>> configuredKeys, Path directory, int topKeys, int concurrency,
+                double targetCoverage, Duration timeout, Executor executor){
+        if(concurrency < 1){
+            throw new IllegalArgumentException("concurrency must be at least 1, got " + concurrency);
+        }
+        this.configuredKeys = configuredKeys;
+        this.directory = directory;
+        this.topKeys = topKeys;
+        this.permits = new Semaphore(concurrency);
+        this.targetCoverage = targetCoverage;
+        this.timeout = timeout;
+        this.executor = executor;
+    }
+
+    static CacheWarmer create(Config config){
+        Path directory = config.getOptionalValue(DIRECTORY_PROPERTY, String.class).map(Paths::get).orElse(null);
+        CacheWarmer warmer = new CacheWarmer(
+                name -> config.getOptionalValue("app.cache." + name + ".warmup-keys", String[].class).map(List::of).orElse(List.of()),
+                directory,
+                config.getOptionalValue(TOP_KEYS_PROPERTY, Integer.class).orElse(1000),
+                config.getOptionalValue(CONCURRENCY_PROPERTY, Integer.class).orElse(16),
+                config.getOptionalValue(TARGET_COVERAGE_PROPERTY, Double.class).orElse(0.9d),
+                Duration.ofSeconds(config.getOptionalValue(TIMEOUT_PROPERTY, Long.class).orElse(300L)),
+                LoaderExecutor.getInstance().getExecutor());
+        if(directory != null){
+            long interval = config.getOptionalValue(INTERVAL_PROPERTY, Long.class).orElse(60L);
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "cache-top-keys");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(warmer::writeTopKeys, interval, interval, TimeUnit.SECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                scheduler.shutdownNow();
+                warmer.writeTopKeys();
+            }, "cache-top-keys-shutdown"));
+        }
+        return warmer;
+    }
+
+    public static CacheWarmer getInstance(){
+        return cacheWarmer;
+    }
+
+    /**
+     * Starts preloading the cache in the background, and keeps its hottest keys for the next run.
+     * Registering again under the same name starts over with the new cache
+     * @param cacheName : Name of the cache, for its configured keys and the file of its hottest keys
+     * @param cache     : Cache to preload
+     * @param loader    : Loads a key into the cache, e.g. loadingCache::get. Called from several threads at once
+     */
+    public void register(String cacheName, Cache<String, ?> cache, Consumer<String> loader){
+        registerAsync(cacheName, cache, key -> CompletableFuture.runAsync(() -> loader.accept(key), executor));
+    }
+
+    /**
+     * Same as register(), for a loader which only starts the load : the key counts as loaded once the future completes
+     * @param cacheName : Name of the cache, for its configured keys and the file of its hottest keys
+     * @param cache     : Cache to preload, e.g. the synchronous view of the AsyncCache the loader goes through
+     * @param loader    : Starts loading a key into the cache, e.g. key -> asyncCache.get(key, mappingFunction). Called
+     *                    from the warm-up thread, it must not block
+     */
+    public void registerAsync(String cacheName, Cache<String, ?> cache, Function<String, ? extends CompletionStage<?>> loader){
+        Set<String> keys = new LinkedHashSet<>(configuredKeys.apply(cacheName));
+        if(directory != null){
+            keys.addAll(readTopKeys(cacheName));
+        }
+        Warmup warmup = new Warmup(cacheName, cache, loader, new ArrayList<>(keys));
+        warmups.put(cacheName, warmup);
+        LOGGER.info("Preloading {} keys in cache {}",keys.size(),cacheName);
+        feeder.execute(warmup::feed);
+    }
+
+    /**
+     * @return  true when every registered cache has loaded the target coverage of its keys, or the time out is over
+     */
+    public boolean isReady(){
+        for(Warmup warmup : warmups.values()){
+            if(warmup.coverage() < targetCoverage && System.nanoTime() - warmup.startNanos < timeout.toNanos()){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return  "loaded/keys" per cache name, with the number of failed loads when there are some
+     */
+    public Map<String, String> progress(){
+        Map<String, String> progress = new LinkedHashMap<>();
+        for(String name : warmups.keySet().stream().sorted().collect(Collectors.toList())){
+            Warmup warmup = warmups.get(name);
+            progress.put(name, warmup.loaded.get() + "/" + warmup.keys.size()
+                    + (warmup.failed.get() > 0 ? " (" + warmup.failed.get() + " failed)" : ""));
+        }
+        return progress;
+    }
+
+    /**
+     * @return  Part of the keys of the cache loaded so far, 1 when it has no key or is not registered
+     */
+    double coverage(String cacheName){
+        Warmup warmup = warmups.get(cacheName);
+        return warmup == null ? 1 : warmup.coverage();
+    }
+
+    boolean isDone(String cacheName){
+        Warmup warmup = warmups.get(cacheName);
+        return warmup == null || warmup.isDone();
+    }
+
+    /**
+     * Writes the hottest keys of every registered cache, the most frequently used ones for a bounded cache
+     */
+    void writeTopKeys(){
+        try{
+            Files.createDirectories(directory);
+        }catch (IOException e){
+            LOGGER.warn("Could not create {}, hottest keys not written",directory,e);
+            return;
+        }
+        warmups.forEach((name, warmup) -> writeTopKeys(name, warmup.cache));
+    }
+
+    private void writeTopKeys(String cacheName, Cache<String, ?> cache){
+        List<String> hottest = cache.policy().eviction()
+                .map(eviction -> List.copyOf(eviction.hottest(topKeys).keySet()))
+                .orElseGet(() -> cache.asMap().keySet().stream().limit(topKeys).collect(Collectors.toList()));
+        // One key per line, the hottest first
+        List<String> lines = hottest.stream()
+                .filter(key -> key.indexOf('\n') < 0 && key.indexOf('\r') < 0)
+                .collect(Collectors.toList());
+        Path file = fileOf(cacheName);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try{
+            Files.write(temporary, lines, StandardCharsets.UTF_8);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.debug("Wrote {} hottest keys of cache {}",lines.size(),cacheName);
+        }catch (IOException e){
+            LOGGER.warn("Could not write the hottest keys of cache {}",cacheName,e);
+        }
+    }
+
+    private List<String> readTopKeys(String cacheName){
+        Path file = fileOf(cacheName);
+        if(!Files.exists(file)){
+            return List.of();
+        }
+        try{
+            return Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                    .filter(line -> !line.isEmpty())
+                    .collect(Collectors.toList());
+        }catch (IOException e){
+            LOGGER.warn("Could not read the hottest keys of cache {}",cacheName,e);
+            return List.of();
+        }
+    }
+
+    private Path fileOf(String cacheName){
+        return directory.resolve(cacheName + FILE_SUFFIX);
+    }
+}
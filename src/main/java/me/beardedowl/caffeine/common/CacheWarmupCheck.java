@@ -0,0 +1,24 @@
+package me.beardedowl.caffeine.common;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
+import org.eclipse.microprofile.health.Readiness;
+
+/**
+ * Reports the instance as not ready until its caches are warm (see CacheWarmer), with the progress of each of them
+ * curl http://localhost:8081/health/ready
+ */
+@Readiness
+@ApplicationScoped
+public class CacheWarmupCheck implements HealthCheck {
+
+    @Override
+    public HealthCheckResponse call() {
+        CacheWarmer warmer = CacheWarmer.getInstance();
+        HealthCheckResponseBuilder response = HealthCheckResponse.named("cache-warmup").status(warmer.isReady());
+        warmer.progress().forEach(response::withData);
+        return response.build();
+    }
+}
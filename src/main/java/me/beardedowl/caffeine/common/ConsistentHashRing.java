@@ -0,0 +1,89 @@
+package me.beardedowl.caffeine.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Chooses which node owns a key, so that every node agrees without talking to the others. Each node is placed on a
+ * ring of 64 bit hashes at virtualNodes points, a key belongs to the first point at or after its own hash. Adding or
+ * removing a node only moves the keys of that node, about 1/N of them, the others keep their owner.
+ *
+ * Immutable, the ring is two sorted arrays searched with a binary search.
+ */
+public final class ConsistentHashRing {
+
+    private final List<String> nodes;
+    private final long[] points;
+    private final String[] owners;
+
+    private ConsistentHashRing(List<String> nodes, int virtualNodes){
+        this.nodes = nodes;
+        long[][] placed = new long[nodes.size() * virtualNodes][];
+        int i = 0;
+        for(int node = 0; node < nodes.size(); node++){
+            for(int replica = 0; replica < virtualNodes; replica++){
+                placed[i++] = new long[]{hash(nodes.get(node) + "#" + replica), node};
+            }
+        }
+        Arrays.sort(placed, (a, b) -> Long.compare(a[0], b[0]));
+        this.points = new long[placed.length];
+        this.owners = new String[placed.length];
+        for(i = 0; i < placed.length; i++){
+            points[i] = placed[i][0];
+            owners[i] = nodes.get((int) placed[i][1]);
+        }
+    }
+
+    /**
+     * @param nodes         : Names of the nodes, duplicates are ignored. Every node must be given the same names
+     * @param virtualNodes  : Points per node, more points spread the keys more evenly
+     */
+    public static ConsistentHashRing of(Collection<String> nodes, int virtualNodes){
+        Set<String> distinct = new LinkedHashSet<>(nodes);
+        if(distinct.isEmpty()){
+            throw new IllegalArgumentException("At least one node is expected");
+        }
+        if(virtualNodes < 1){
+            throw new IllegalArgumentException("virtualNodes must be at least 1, got " + virtualNodes);
+        }
+        return new ConsistentHashRing(List.copyOf(distinct), virtualNodes);
+    }
+
+    public String ownerOf(String key){
+        int index = Arrays.binarySearch(points, hash(key));
+        if(index < 0){
+            // Insertion point : the first point after the hash, the ring wraps around after the last one
+            index = -index - 1;
+            if(index == points.length){
+                index = 0;
+            }
+        }
+        return owners[index];
+    }
+
+    public List<String> nodes(){
+        return nodes;
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes, mixed with the finalizer of MurmurHash3 so that close strings ("node#1",
+     * "node#2") land far apart
+     */
+    static long hash(String value){
+        long hash = 0xcbf29ce484222325L;
+        for(byte b : value.getBytes(StandardCharsets.UTF_8)){
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
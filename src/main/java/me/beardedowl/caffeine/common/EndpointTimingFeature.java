@@ -0,0 +1,71 @@
+package me.beardedowl.caffeine.common;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.DynamicFeature;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.FeatureContext;
+import jakarta.ws.rs.ext.Provider;
+import org.eclipse.microprofile.metrics.Histogram;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+
+/**
+ * Times every resource method of the application, replacing the Instant / Duration / LOGGER.info("{} completed in
+ * {} ms") blocks the endpoints used to have.
+ *
+ * Each resource method gets its own filter holding its histogram, so a request costs two System.nanoTime() calls,
+ * one request property (a boxed long) and one Histogram.update(long). Nothing is logged.
+ *
+ * Metrics, tagged with endpoint=<resource class>.<method>
+ *  endpoint.latency    : histogram of the time between the request filters and the response filters, in nanoseconds
+ *                        (p50, p75, p95, p98, p99, p999 under /metrics). For an async method the time runs until the
+ *                        CompletionStage completes. A StreamingOutput is written after the response filters, so the
+ *                        time to stream the body is not included
+ */
+@Provider
+@ApplicationScoped
+public class EndpointTimingFeature implements DynamicFeature {
+
+    static final String METRIC_NAME = "endpoint.latency";
+    static final String ENDPOINT_TAG = "endpoint";
+    // First of the request filters, last of the response filters
+    static final int PRIORITY = 0;
+
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+        String endpoint = resourceInfo.getResourceClass().getSimpleName() + "." + resourceInfo.getResourceMethod().getName();
+        Histogram histogram = CacheMetrics.applicationRegistry().histogram(
+                CacheMetrics.metadata(METRIC_NAME, "Time spent serving the requests of an endpoint", MetricType.HISTOGRAM, MetricUnits.NANOSECONDS),
+                new Tag(ENDPOINT_TAG, endpoint));
+        context.register(new EndpointTimer(histogram), PRIORITY);
+    }
+
+    static final class EndpointTimer implements ContainerRequestFilter, ContainerResponseFilter {
+
+        private static final String START_PROPERTY = EndpointTimer.class.getName() + ".start";
+
+        private final Histogram histogram;
+
+        EndpointTimer(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public void filter(ContainerRequestContext requestContext) {
+            requestContext.setProperty(START_PROPERTY, System.nanoTime());
+        }
+
+        @Override
+        public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+            Object start = requestContext.getProperty(START_PROPERTY);
+            if(start instanceof Long){
+                histogram.update(System.nanoTime() - (Long) start);
+            }
+        }
+    }
+}
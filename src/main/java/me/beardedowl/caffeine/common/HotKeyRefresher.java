@@ -0,0 +1,139 @@
+package me.beardedowl.caffeine.common;
+
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.Policy;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Refreshes hot keys in the background before they expire (stale-while-revalidate), so that readers keep getting the
+ * current value while the new one loads and the reloads are spread over time instead of waiting for the expiry.
+ *
+ * A key is hot when it has been read (recordRead()) since it was last refreshed. Every period the refresher takes the
+ * entries expiring within the lead time, soonest first, and calls LoadingCache.refresh() on at most maxPerRun hot ones.
+ * Cold keys are left to expire. The cache must use a variable expiry (WriteExpiry / JitteredExpiry).
+ *
+ * Configured from microprofile-config.properties (see start())
+ *  app.cache.refresh.period-seconds  : time between two runs
+ *  app.cache.refresh.lead-seconds    : how long before its expiry a hot key can be refreshed
+ *  app.cache.refresh.max-per-run     : upper bound of refreshes per run, which caps the reload rate of the cache
+ */
+public final class HotKeyRefresher<K, V> implements AutoCloseable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(HotKeyRefresher.class.getName());
+
+    static final String PERIOD_PROPERTY = "app.cache.refresh.period-seconds";
+    static final String LEAD_PROPERTY = "app.cache.refresh.lead-seconds";
+    static final String MAX_PER_RUN_PROPERTY = "app.cache.refresh.max-per-run";
+
+    // Only picks the keys, the reloads run on the executor of the cache
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hot-key-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String cacheName;
+    private final LoadingCache<K, V> cache;
+    private final Policy.VarExpiration<K, V> varExpiration;
+    private final long leadNanos;
+    private final int maxPerRun;
+    private final Set<K> readSinceRefresh = ConcurrentHashMap.newKeySet();
+    private volatile ScheduledFuture<?> schedule;
+
+    /**
+     * @param cacheName : Name used in the logs
+     * @param cache     : Cache to refresh, built with a variable expiry
+     * @param lead      : How long before its expiry a hot key can be refreshed
+     * @param maxPerRun : Upper bound of refreshes per run
+     */
+    public HotKeyRefresher(String cacheName, LoadingCache<K, V> cache, Duration lead, int maxPerRun){
+        this.cacheName = cacheName;
+        this.cache = cache;
+        this.varExpiration = cache.policy().expireVariably().orElseThrow(() ->
+                new IllegalArgumentException("Cache " + cacheName + " does not use a variable expiry"));
+        this.leadNanos = lead.toNanos();
+        this.maxPerRun = maxPerRun;
+    }
+
+    /**
+     * Creates a refresher configured from microprofile-config.properties and schedules it. The first run is delayed
+     * by a random part of the period so that the refreshers of different caches do not run together
+     */
+    public static <K, V> HotKeyRefresher<K, V> start(String cacheName, LoadingCache<K, V> cache){
+        Config config = ConfigProvider.getConfig();
+        long period = config.getOptionalValue(PERIOD_PROPERTY, Long.class).orElse(5L);
+        long lead = config.getOptionalValue(LEAD_PROPERTY, Long.class).orElse(60L);
+        int maxPerRun = config.getOptionalValue(MAX_PER_RUN_PROPERTY, Integer.class).orElse(100);
+        HotKeyRefresher<K, V> refresher = new HotKeyRefresher<>(cacheName, cache, Duration.ofSeconds(lead), maxPerRun);
+        long periodMillis = TimeUnit.SECONDS.toMillis(period);
+        refresher.schedule = TIMER.scheduleWithFixedDelay(refresher::runSafely,
+                ThreadLocalRandom.current().nextLong(periodMillis + 1), periodMillis, TimeUnit.MILLISECONDS);
+        return refresher;
+    }
+
+    /**
+     * Marks the key as hot. Cheap once the key is marked : a read of a concurrent set
+     */
+    public void recordRead(K key){
+        if(!readSinceRefresh.contains(key)){
+            readSinceRefresh.add(key);
+        }
+    }
+
+    /**
+     * One run : refreshes the hot keys expiring within the lead time
+     * @return  Number of refreshes started
+     */
+    public int refreshDue(){
+        // Keys which expired or were invalidated without being refreshed
+        readSinceRefresh.removeIf(key -> !cache.asMap().containsKey(key));
+        if(readSinceRefresh.isEmpty()){
+            return 0;
+        }
+        List<K> due = varExpiration.oldest(entries -> entries
+                .takeWhile(entry -> entry.expiresAfter().toNanos() <= leadNanos)
+                .map(Policy.CacheEntry::getKey)
+                .filter(readSinceRefresh::contains)
+                .limit(maxPerRun)
+                .collect(Collectors.toList()));
+        for(K key : due){
+            readSinceRefresh.remove(key);
+            cache.refresh(key);
+        }
+        if(!due.isEmpty()){
+            LOGGER.debug("Refreshing {} hot keys of cache {}",due.size(),cacheName);
+        }
+        return due.size();
+    }
+
+    @Override
+    public void close(){
+        ScheduledFuture<?> scheduled = schedule;
+        if(scheduled != null){
+            scheduled.cancel(false);
+        }
+    }
+
+    private void runSafely(){
+        try{
+            refreshDue();
+        }catch (RuntimeException e){
+            // An exception would cancel the schedule
+            LOGGER.warn("Refresh of cache {} failed",cacheName,e);
+        }
+    }
+}
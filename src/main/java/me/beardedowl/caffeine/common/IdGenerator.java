@@ -0,0 +1,51 @@
+package me.beardedowl.caffeine.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unique ids for objects created concurrently, without a shared counter written on every call.
+ *
+ * Each thread takes a block of blockSize ids from a shared AtomicLong and hands them out from a thread local, so the
+ * shared counter (and its cache line) is touched once every blockSize ids instead of every time. Ids are unique for
+ * the life of the generator and increase within a thread, but not across threads : two users loaded one after the
+ * other on different threads can get ids far apart.
+ *
+ * A thread which stops before using its block leaves a gap, this matters only for short lived threads (virtual
+ * threads of LoaderExecutor) and costs a few numbers out of 2^63.
+ */
+public final class IdGenerator {
+
+    static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private final AtomicLong nextBlock = new AtomicLong();
+    private final int blockSize;
+    // { next id, end of the block (excluded) } of the current thread
+    private final ThreadLocal<long[]> block;
+
+    public IdGenerator(){
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param blockSize : Number of ids a thread takes at once, 1 gives consecutive ids through a plain AtomicLong
+     */
+    public IdGenerator(int blockSize){
+        if(blockSize < 1){
+            throw new IllegalArgumentException("blockSize must be at least 1, got " + blockSize);
+        }
+        this.blockSize = blockSize;
+        this.block = ThreadLocal.withInitial(() -> new long[2]);
+    }
+
+    /**
+     * @return  An id no other call of this generator returned
+     */
+    public long nextId(){
+        long[] range = block.get();
+        if(range[0] == range[1]){
+            range[0] = nextBlock.getAndAdd(blockSize);
+            range[1] = range[0] + blockSize;
+        }
+        return range[0]++;
+    }
+}
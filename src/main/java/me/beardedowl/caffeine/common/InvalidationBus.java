@@ -0,0 +1,605 @@
+package me.beardedowl.caffeine.common;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Invalidates entries on every instance of the application, not only on the one which got the request. Each replica
+ * has its own caches, without this an entry invalidated on one of them stays on the others until it expires.
+ *
+ * A cache takes part once registered with the encoding of its keys
+ *  InvalidationBus.getInstance().register("message", cache, SnapshotCodec.STRING);
+ *  InvalidationBus.getInstance().invalidate("message", "Joe");
+ * and, to invalidate every key of a group at once (e.g. every surname looked up for a user), with its grouping
+ *  InvalidationBus.getInstance().register("message-surname", cache, UserNameKeyCodec.INSTANCE, UserNameKey::getUserName);
+ *  InvalidationBus.getInstance().invalidateGroup("message-surname", "Joe");
+ * A store behind the cache, which a key can leave the cache for, is registered along with it (see InvalidationListener).
+ * The local cache is invalidated right away, the other instances get the invalidation within a window.
+ *
+ * Invalidations are not sent one by one : they are queued and sent every window, as many as fit in a packet, so that
+ * invalidating thousands of keys costs a few packets. The queued invalidations are grouped per cache and type, the
+ * name of the cache is only written once per group and packet. An invalidateAll() drops the invalidations of the same
+ * cache queued before it. A packet is
+ *  int     magic
+ *  byte    version
+ *  long    sender, packets of the instance itself are ignored
+ *  short   number of groups, then for each of them
+ *    string  cache name (see SnapshotCodec)
+ *    byte    KEY, PREFIX, ALL or GROUP
+ *    short   number of invalidations, none for ALL, then for each of them
+ *      int     number of bytes, then the key (its codec), the prefix or the group (a string)
+ * Invalidations of a cache this instance does not have are skipped.
+ *
+ * Configured from microprofile-config.properties
+ *  app.cache.invalidation.transport                  : none (the default, local only) or multicast (see MulticastTransport)
+ *  app.cache.invalidation.multicast.group / port     : the same on every instance
+ *  app.cache.invalidation.multicast.interface        : name of the interface, the default one when unset
+ *  app.cache.invalidation.multicast.ttl              : 1 keeps the packets on the local network
+ *  app.cache.invalidation.batch.window-millis        : how long an invalidation may wait before being sent
+ *  app.cache.invalidation.batch.max-packet-bytes     : packets stay under this size, below the MTU
+ *
+ * Delivery is best effort, an instance which misses a packet serves the entries until they expire. The invalidations
+ * still queued when the JVM shuts down are sent before it stops.
+ *
+ * Metrics are tagged with direction=sent|received
+ *  cache.invalidation.packets  : number of packets
+ *  cache.invalidation.messages : number of invalidations they carried
+ */
+public final class InvalidationBus {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(InvalidationBus.class.getName());
+
+    static final String TRANSPORT_PROPERTY = "app.cache.invalidation.transport";
+    static final String GROUP_PROPERTY = "app.cache.invalidation.multicast.group";
+    static final String PORT_PROPERTY = "app.cache.invalidation.multicast.port";
+    static final String INTERFACE_PROPERTY = "app.cache.invalidation.multicast.interface";
+    static final String TTL_PROPERTY = "app.cache.invalidation.multicast.ttl";
+    static final String WINDOW_PROPERTY = "app.cache.invalidation.batch.window-millis";
+    static final String MAX_PACKET_PROPERTY = "app.cache.invalidation.batch.max-packet-bytes";
+
+    static final int MAGIC = 0x43494E56;
+    static final byte VERSION = 2;
+    static final int HEADER_BYTES = Integer.BYTES + Byte.BYTES + Long.BYTES + Short.BYTES;
+    // Offset of the number of groups in the header
+    private static final int GROUPS_OFFSET = Integer.BYTES + Byte.BYTES + Long.BYTES;
+
+    static final byte KEY = 0;
+    static final byte PREFIX = 1;
+    static final byte ALL = 2;
+    static final byte GROUP = 3;
+
+    // Largest UDP payload, a single invalidation bigger than this is not sent
+    private static final int MAX_DATAGRAM = 65507;
+
+    private static final class Registration<K> {
+        final Cache<K, ?> cache;
+        final SnapshotCodec<K> keyCodec;
+        // null when the cache cannot be invalidated by group
+        final Function<? super K, String> grouping;
+        // null when nothing but the cache holds the keys
+        final InvalidationListener<K> listener;
+
+        Registration(Cache<K, ?> cache, SnapshotCodec<K> keyCodec, Function<? super K, String> grouping,
+                     InvalidationListener<K> listener) {
+            this.cache = cache;
+            this.keyCodec = keyCodec;
+            this.grouping = grouping;
+            this.listener = listener;
+        }
+
+        void invalidate(K key){
+            cache.invalidate(key);
+            if(listener != null){
+                listener.invalidate(key);
+            }
+        }
+
+        void invalidateIf(Predicate<? super K> matching){
+            cache.asMap().keySet().removeIf(matching);
+            if(listener != null){
+                listener.invalidateIf(matching);
+            }
+        }
+
+        void invalidateAll(){
+            cache.invalidateAll();
+            if(listener != null){
+                listener.invalidateAll();
+            }
+        }
+    }
+
+    private static final class Invalidation {
+        final byte type;
+        final String cacheName;
+        final byte[] body;
+
+        Invalidation(byte type, String cacheName, byte[] body) {
+            this.type = type;
+            this.cacheName = cacheName;
+            this.body = body;
+        }
+    }
+
+    private static InvalidationBus invalidationBus = create(ConfigProvider.getConfig());
+
+    private final long sender = ThreadLocalRandom.current().nextLong();
+    private final Map<String, Registration<?>> registrations = new ConcurrentHashMap<>();
+    private final Queue<Invalidation> queue = new ConcurrentLinkedQueue<>();
+    // null when the bus is local only
+    private final InvalidationTransport transport;
+    private final ScheduledExecutorService timer;
+    private final int maxPacketBytes;
+
+    private final LongAdder packetsSent = new LongAdder();
+    private final LongAdder packetsReceived = new LongAdder();
+    private final Counter sentPackets;
+    private final Counter sentMessages;
+    private final Counter receivedPackets;
+    private final Counter receivedMessages;
+
+    /**
+     * @param transport         : Where the packets go, null to only invalidate the local caches
+     * @param window            : How long an invalidation may wait to be sent along with others
+     * @param maxPacketBytes    : Packets are kept under this size
+     */
+    InvalidationBus(InvalidationTransport transport, Duration window, int maxPacketBytes){
+        if(maxPacketBytes <= HEADER_BYTES || maxPacketBytes > MAX_DATAGRAM){
+            throw new IllegalArgumentException("maxPacketBytes must be between " + (HEADER_BYTES + 1) + " and " + MAX_DATAGRAM);
+        }
+        this.transport = transport;
+        this.maxPacketBytes = maxPacketBytes;
+        MetricRegistry registry = CacheMetrics.applicationRegistry();
+        Metadata packets = CacheMetrics.metadata("cache.invalidation.packets", "Number of invalidation packets", MetricType.COUNTER, MetricUnits.NONE);
+        Metadata messages = CacheMetrics.metadata("cache.invalidation.messages", "Number of invalidations carried by the packets", MetricType.COUNTER, MetricUnits.NONE);
+        Tag sent = new Tag("direction", "sent");
+        Tag received = new Tag("direction", "received");
+        this.sentPackets = registry.counter(packets, sent);
+        this.sentMessages = registry.counter(messages, sent);
+        this.receivedPackets = registry.counter(packets, received);
+        this.receivedMessages = registry.counter(messages, received);
+        if(transport == null){
+            this.timer = null;
+            return;
+        }
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-invalidation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long windowMillis = Math.max(1, window.toMillis());
+        timer.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    static InvalidationBus create(Config config){
+        Duration window = Duration.ofMillis(config.getOptionalValue(WINDOW_PROPERTY, Long.class).orElse(10L));
+        int maxPacketBytes = config.getOptionalValue(MAX_PACKET_PROPERTY, Integer.class).orElse(1400);
+        String transportName = config.getOptionalValue(TRANSPORT_PROPERTY, String.class).orElse("none");
+        if(!"multicast".equals(transportName)){
+            if(!"none".equals(transportName)){
+                LOGGER.warn("Unknown {} {}, invalidations stay local",TRANSPORT_PROPERTY,transportName);
+            }
+            return new InvalidationBus(null, window, maxPacketBytes);
+        }
+        InvalidationTransport transport;
+        try{
+            InetAddress group = InetAddress.getByName(config.getOptionalValue(GROUP_PROPERTY, String.class).orElse("239.255.42.99"));
+            int port = config.getOptionalValue(PORT_PROPERTY, Integer.class).orElse(45566);
+            Optional<String> interfaceName = config.getOptionalValue(INTERFACE_PROPERTY, String.class);
+            NetworkInterface networkInterface = interfaceName.isPresent() ? NetworkInterface.getByName(interfaceName.get()) : null;
+            if(interfaceName.isPresent() && networkInterface == null){
+                throw new IOException("No network interface named " + interfaceName.get());
+            }
+            int timeToLive = config.getOptionalValue(TTL_PROPERTY, Integer.class).orElse(1);
+            transport = new MulticastTransport(group, port, networkInterface, timeToLive);
+        }catch (IOException e){
+            LOGGER.warn("Could not open the invalidation transport, invalidations stay local",e);
+            return new InvalidationBus(null, window, maxPacketBytes);
+        }
+        InvalidationBus bus = new InvalidationBus(transport, window, maxPacketBytes);
+        bus.start();
+        // The invalidations of the last window would not reach the other instances otherwise
+        Runtime.getRuntime().addShutdownHook(new Thread(bus::close, "cache-invalidation-shutdown"));
+        return bus;
+    }
+
+    public static InvalidationBus getInstance(){
+        return invalidationBus;
+    }
+
+    void start(){
+        try{
+            transport.start(this::receive);
+        }catch (IOException e){
+            LOGGER.warn("Could not receive invalidations from the other instances",e);
+        }
+    }
+
+    /**
+     * Stops sending and receiving, the invalidations still queued are sent first. Called when the JVM shuts down
+     */
+    void close(){
+        if(transport == null){
+            return;
+        }
+        timer.shutdown();
+        try{
+            timer.awaitTermination(1, TimeUnit.SECONDS);
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        try{
+            transport.close();
+        }catch (IOException e){
+            LOGGER.warn("Could not close the invalidation transport",e);
+        }
+    }
+
+    /**
+     * Invalidations of the other instances for this name are applied to the cache. Registering again under the same
+     * name replaces the cache
+     * @param cacheName : Same on every instance
+     * @param cache     : Cache to invalidate
+     * @param keyCodec  : Encoding of the keys, also used by the other instances to read them back
+     */
+    public <K> void register(String cacheName, Cache<K, ?> cache, SnapshotCodec<K> keyCodec){
+        registrations.put(cacheName, new Registration<>(cache, keyCodec, null, null));
+    }
+
+    /**
+     * Same as register(cacheName, cache, keyCodec), the cache can also be invalidated by group (see invalidateGroup)
+     * @param grouping  : Group of a key, the same on every instance
+     */
+    public <K> void register(String cacheName, Cache<K, ?> cache, SnapshotCodec<K> keyCodec, Function<? super K, String> grouping){
+        registrations.put(cacheName, new Registration<>(cache, keyCodec, grouping, null));
+    }
+
+    /**
+     * Same as register(cacheName, cache, keyCodec), every invalidation of the cache is also passed to the listener
+     * @param listener  : Store behind the cache, which holds keys the cache may no longer have
+     */
+    public <K> void register(String cacheName, Cache<K, ?> cache, SnapshotCodec<K> keyCodec, InvalidationListener<K> listener){
+        registrations.put(cacheName, new Registration<>(cache, keyCodec, null, listener));
+    }
+
+    /**
+     * Invalidates the key here, and on the other instances within a window
+     * @throws IllegalArgumentException when the cache is not registered
+     */
+    public <K> void invalidate(String cacheName, K key){
+        Registration<K> registration = registration(cacheName);
+        registration.invalidate(key);
+        publish(KEY, cacheName, registration.keyCodec.toBytes(key));
+    }
+
+    /**
+     * Invalidates the keys here and on the other instances, sent in as few packets as they fit in
+     * @throws IllegalArgumentException when the cache is not registered
+     */
+    public <K> void invalidateAll(String cacheName, Iterable<? extends K> keys){
+        Registration<K> registration = registration(cacheName);
+        for(K key : keys){
+            registration.invalidate(key);
+            publish(KEY, cacheName, registration.keyCodec.toBytes(key));
+        }
+    }
+
+    /**
+     * Invalidates the keys whose String.valueOf() starts with the prefix, here and on the other instances.
+     * Goes through every key of the cache
+     * @throws IllegalArgumentException when the cache is not registered
+     */
+    public void invalidatePrefix(String cacheName, String prefix){
+        Registration<?> registration = registration(cacheName);
+        removePrefix(registration, prefix);
+        publish(PREFIX, cacheName, SnapshotCodec.STRING.toBytes(prefix));
+    }
+
+    /**
+     * Invalidates the keys of the group, here and on the other instances. Goes through every key of the cache
+     * @throws IllegalArgumentException when the cache is not registered, or registered without a grouping
+     */
+    public void invalidateGroup(String cacheName, String group){
+        Registration<?> registration = registration(cacheName);
+        if(registration.grouping == null){
+            throw new IllegalArgumentException("Cache " + cacheName + " is registered without a grouping");
+        }
+        removeGroup(registration, group);
+        publish(GROUP, cacheName, SnapshotCodec.STRING.toBytes(group));
+    }
+
+    /**
+     * Empties the cache here and on the other instances
+     * @throws IllegalArgumentException when the cache is not registered
+     */
+    public void invalidateAll(String cacheName){
+        registration(cacheName).invalidateAll();
+        publish(ALL, cacheName, new byte[0]);
+    }
+
+    /**
+     * @return  Names of the registered caches
+     */
+    public Set<String> names(){
+        return Set.copyOf(registrations.keySet());
+    }
+
+    long packetsSent(){
+        return packetsSent.sum();
+    }
+
+    long packetsReceived(){
+        return packetsReceived.sum();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <K> Registration<K> registration(String cacheName){
+        Registration<?> registration = registrations.get(cacheName);
+        if(registration == null){
+            throw new IllegalArgumentException("No cache named " + cacheName + " on the invalidation bus, known caches are " + names());
+        }
+        return (Registration<K>) registration;
+    }
+
+    private static void removePrefix(Registration<?> registration, String prefix){
+        registration.invalidateIf(key -> String.valueOf(key).startsWith(prefix));
+    }
+
+    private static <K> void removeGroup(Registration<K> registration, String group){
+        registration.invalidateIf(key -> group.equals(registration.grouping.apply(key)));
+    }
+
+    private void publish(byte type, String cacheName, byte[] body){
+        if(transport != null){
+            queue.add(new Invalidation(type, cacheName, body));
+        }
+    }
+
+    /**
+     * Sends everything queued, called every window
+     */
+    void flush(){
+        Map<String, Map<Byte, List<byte[]>>> batch = coalesce();
+        if(batch.isEmpty()){
+            return;
+        }
+        PacketWriter writer = new PacketWriter();
+        batch.forEach((cacheName, groups) -> groups.forEach((type, bodies) -> writer.write(cacheName, type, bodies)));
+        writer.send();
+    }
+
+    /**
+     * @return  The queued invalidations grouped per cache then type, less those made useless by a later
+     *          invalidateAll() of the same cache
+     */
+    private Map<String, Map<Byte, List<byte[]>>> coalesce(){
+        Map<String, Map<Byte, List<byte[]>>> batch = new LinkedHashMap<>();
+        Invalidation invalidation;
+        while((invalidation = queue.poll()) != null){
+            if(invalidation.type == ALL){
+                Map<Byte, List<byte[]>> cleared = new LinkedHashMap<>();
+                cleared.put(ALL, List.of());
+                batch.put(invalidation.cacheName, cleared);
+                continue;
+            }
+            batch.computeIfAbsent(invalidation.cacheName, name -> new LinkedHashMap<>())
+                    .computeIfAbsent(invalidation.type, type -> new ArrayList<>())
+                    .add(invalidation.body);
+        }
+        return batch;
+    }
+
+    /**
+     * Fills packets group after group, a group cut by the end of a packet goes on in the next one
+     */
+    private final class PacketWriter {
+
+        private final ByteBuffer packet = ByteBuffer.allocate(maxPacketBytes);
+        private int groups;
+        private int messages;
+
+        void write(String cacheName, byte type, List<byte[]> bodies){
+            int groupBytes = SnapshotCodec.sizeOfString(cacheName) + Byte.BYTES + Short.BYTES;
+            if(type == ALL){
+                reserve(groupBytes);
+                putGroup(packet, cacheName, type, 0);
+                groups++;
+                messages++;
+                return;
+            }
+            // Position of the number of invalidations of the group in the packet, -1 while it is not open
+            int countPosition = -1;
+            int count = 0;
+            for(byte[] body : bodies){
+                int entryBytes = Integer.BYTES + body.length;
+                if(HEADER_BYTES + groupBytes + entryBytes > maxPacketBytes){
+                    sendAlone(cacheName, type, body);
+                    continue;
+                }
+                if(countPosition < 0 || packet.position() + entryBytes > maxPacketBytes){
+                    if(countPosition >= 0){
+                        packet.putShort(countPosition, (short) count);
+                    }
+                    reserve(groupBytes + entryBytes);
+                    countPosition = putGroup(packet, cacheName, type, 0);
+                    groups++;
+                    count = 0;
+                }
+                packet.putInt(body.length);
+                packet.put(body);
+                count++;
+                messages++;
+            }
+            if(countPosition >= 0){
+                packet.putShort(countPosition, (short) count);
+            }
+        }
+
+        /**
+         * Sends the packet first when the bytes do not fit in it any more
+         */
+        private void reserve(int bytes){
+            if(groups > 0 && packet.position() + bytes > maxPacketBytes){
+                send();
+            }
+            if(packet.position() == 0){
+                putHeader(packet);
+            }
+        }
+
+        void send(){
+            if(groups == 0){
+                return;
+            }
+            InvalidationBus.this.send(packet, groups, messages);
+            packet.clear();
+            groups = 0;
+            messages = 0;
+        }
+
+        /**
+         * An invalidation too big to share a packet
+         */
+        private void sendAlone(String cacheName, byte type, byte[] body){
+            int size = HEADER_BYTES + SnapshotCodec.sizeOfString(cacheName) + Byte.BYTES + Short.BYTES + Integer.BYTES + body.length;
+            if(size > MAX_DATAGRAM){
+                LOGGER.warn("Invalidation of {} bytes for cache {} is too big to be sent",body.length,cacheName);
+                return;
+            }
+            ByteBuffer single = ByteBuffer.allocate(size);
+            putHeader(single);
+            putGroup(single, cacheName, type, 1);
+            single.putInt(body.length);
+            single.put(body);
+            InvalidationBus.this.send(single, 1, 1);
+        }
+    }
+
+    private void send(ByteBuffer packet, int groups, int messages){
+        packet.putShort(GROUPS_OFFSET, (short) groups);
+        try{
+            transport.send(packet.array(), packet.position());
+            packetsSent.increment();
+            sentPackets.inc();
+            sentMessages.inc(messages);
+        }catch (IOException e){
+            LOGGER.warn("Could not send {} invalidations",messages,e);
+        }
+    }
+
+    private void putHeader(ByteBuffer packet){
+        packet.putInt(MAGIC);
+        packet.put(VERSION);
+        packet.putLong(sender);
+        // Number of groups, set once the packet is full
+        packet.putShort((short) 0);
+    }
+
+    /**
+     * @return  Position of the number of invalidations, to set it once the group is written
+     */
+    private static int putGroup(ByteBuffer packet, String cacheName, byte type, int count){
+        SnapshotCodec.putString(packet, cacheName);
+        packet.put(type);
+        int countPosition = packet.position();
+        packet.putShort((short) count);
+        return countPosition;
+    }
+
+    /**
+     * Applies a packet of another instance
+     */
+    void receive(ByteBuffer packet){
+        try{
+            if(packet.getInt() != MAGIC || packet.get() != VERSION){
+                LOGGER.warn("Ignoring a packet which is not a cache invalidation");
+                return;
+            }
+            if(packet.getLong() == sender){
+                return;
+            }
+            int groups = packet.getShort();
+            int messages = 0;
+            for(int i = 0; i < groups; i++){
+                String cacheName = SnapshotCodec.getString(packet);
+                byte type = packet.get();
+                int count = packet.getShort();
+                Registration<?> registration = registrations.get(cacheName);
+                if(type == ALL){
+                    if(registration != null){
+                        registration.invalidateAll();
+                    }
+                    messages++;
+                    continue;
+                }
+                for(int j = 0; j < count; j++){
+                    int length = packet.getInt();
+                    ByteBuffer body = packet.slice().limit(length);
+                    packet.position(packet.position() + length);
+                    if(registration != null){
+                        apply(registration, type, body);
+                    }
+                    messages++;
+                }
+            }
+            packetsReceived.increment();
+            receivedPackets.inc();
+            receivedMessages.inc(messages);
+        }catch (BufferUnderflowException | IllegalArgumentException e){
+            LOGGER.warn("Ignoring a malformed invalidation packet",e);
+        }
+    }
+
+    private static <K> void apply(Registration<K> registration, byte type, ByteBuffer body){
+        switch(type){
+            case KEY:
+                registration.invalidate(registration.keyCodec.read(body));
+                break;
+            case PREFIX:
+                removePrefix(registration, SnapshotCodec.getString(body));
+                break;
+            case GROUP:
+                if(registration.grouping == null){
+                    LOGGER.warn("Ignoring an invalidation by group, the cache is registered without a grouping");
+                    break;
+                }
+                removeGroup(registration, SnapshotCodec.getString(body));
+                break;
+            default:
+                LOGGER.warn("Ignoring an invalidation of unknown type {}",type);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package me.beardedowl.caffeine.common;
+
+import java.util.function.Predicate;
+
+/**
+ * Gets every invalidation the InvalidationBus applies to a cache, made here or received from another instance.
+ *
+ * Meant for a store behind the cache which the removal events of the cache do not reach, e.g. the off-heap second
+ * level of CacheSingleton : a key spilled there is no longer in the cache, invalidating the cache does not remove it.
+ */
+public interface InvalidationListener<K> {
+
+    void invalidate(K key);
+
+    /**
+     * Invalidates the keys matching, for invalidatePrefix() and invalidateGroup()
+     */
+    void invalidateIf(Predicate<? super K> matching);
+
+    void invalidateAll();
+}
@@ -0,0 +1,25 @@
+package me.beardedowl.caffeine.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Carries the packets of the InvalidationBus between the instances of the application. A packet sent by an instance
+ * should reach every other one, delivery may be lossy and a packet may come back to its sender (the bus ignores it).
+ *
+ * See MulticastTransport for the one used in production.
+ */
+public interface InvalidationTransport extends Closeable {
+
+    /**
+     * Starts delivering the packets of the other instances to the receiver, on a thread of the transport
+     */
+    void start(Consumer<ByteBuffer> receiver) throws IOException;
+
+    /**
+     * @param packet    : Bytes to send, from 0 to length
+     */
+    void send(byte[] packet, int length) throws IOException;
+}
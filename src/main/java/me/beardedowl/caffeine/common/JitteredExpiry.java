@@ -0,0 +1,61 @@
+package me.beardedowl.caffeine.common;
+
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * WriteExpiry whose duration is drawn at random, per entry and on every write, within expireAfterWrite +/- jitter.
+ *
+ * Entries loaded together (after a restart, or by a burst of requests) then expire spread over that interval
+ * instead of all at the same time, which would send all their reloads to the loader at once.
+ *
+ *  app.cache.expiry.jitter : fraction of the duration, 0.2 gives 2 minutes +/- 24 seconds. 0 disables the jitter
+ */
+public class JitteredExpiry<K, V> extends WriteExpiry<K, V> {
+
+    static final String JITTER_PROPERTY = "app.cache.expiry.jitter";
+
+    private final double jitter;
+
+    /**
+     * @param expireAfterWrite  : Average time to live
+     * @param jitter            : Fraction of expireAfterWrite added or taken at random, between 0 and 1
+     */
+    public JitteredExpiry(Duration expireAfterWrite, double jitter){
+        super(expireAfterWrite);
+        if(jitter < 0 || jitter >= 1){
+            throw new IllegalArgumentException("jitter must be in [0, 1), got " + jitter);
+        }
+        this.jitter = jitter;
+    }
+
+    /**
+     * Jitter taken from microprofile-config.properties
+     */
+    public static <K, V> JitteredExpiry<K, V> of(Duration expireAfterWrite){
+        double jitter = ConfigProvider.getConfig().getOptionalValue(JITTER_PROPERTY, Double.class).orElse(0.2);
+        return new JitteredExpiry<>(expireAfterWrite, jitter);
+    }
+
+    @Override
+    public long expireAfterCreate(K key, V value, long currentTime) {
+        return nextDuration();
+    }
+
+    @Override
+    public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+        return nextDuration();
+    }
+
+    private long nextDuration(){
+        // Taken from the current duration, which can be changed at runtime
+        long expireAfterWriteNanos = getExpireAfterWriteNanos();
+        long jitterNanos = (long) (expireAfterWriteNanos * jitter);
+        if(jitterNanos == 0){
+            return expireAfterWriteNanos;
+        }
+        return expireAfterWriteNanos + ThreadLocalRandom.current().nextLong(-jitterNanos, jitterNanos + 1);
+    }
+}
@@ -0,0 +1,89 @@
+package me.beardedowl.caffeine.common;
+
+import org.eclipse.microprofile.config.Config;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time a simulated backend takes to answer. A fixed delay hides what a cache does with the slow tail of a real
+ * backend, a log-normal one (most calls close to the median, a few far above it) is closer to what a database or a
+ * remote service gives.
+ *
+ * Read from microprofile-config.properties under a prefix (see read())
+ *  <prefix>.distribution   : fixed, uniform or lognormal
+ *  <prefix>.median-millis  : the delay for fixed, the median for lognormal
+ *  <prefix>.p99-millis     : 99th percentile for lognormal
+ *  <prefix>.min-millis / max-millis : bounds for uniform
+ */
+public interface LatencyDistribution {
+
+    // z-score of the 99th percentile of a normal distribution
+    double Z_99 = 2.326;
+
+    long nextNanos();
+
+    /**
+     * Sleeps for the next delay
+     */
+    default void sleep() throws InterruptedException {
+        long nanos = nextNanos();
+        if(nanos > 0){
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    }
+
+    static LatencyDistribution fixed(Duration delay){
+        long nanos = delay.toNanos();
+        return () -> nanos;
+    }
+
+    static LatencyDistribution uniform(Duration min, Duration max){
+        long minNanos = min.toNanos();
+        long maxNanos = max.toNanos();
+        if(maxNanos < minNanos){
+            throw new IllegalArgumentException("max " + max + " is lower than min " + min);
+        }
+        return () -> minNanos + ThreadLocalRandom.current().nextLong(maxNanos - minNanos + 1);
+    }
+
+    /**
+     * @param median    : Half of the calls are faster
+     * @param p99       : 1% of the calls are slower, at least the median
+     */
+    static LatencyDistribution logNormal(Duration median, Duration p99){
+        if(median.isZero() || median.isNegative() || p99.compareTo(median) < 0){
+            throw new IllegalArgumentException("Expected 0 < median <= p99, got " + median + " and " + p99);
+        }
+        double mu = Math.log(median.toNanos());
+        double sigma = Math.log((double) p99.toNanos() / median.toNanos()) / Z_99;
+        return () -> (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+    }
+
+    /**
+     * @param prefix            : Prefix of the properties, without the trailing dot
+     * @param defaultMedian     : Fixed delay when nothing is configured
+     * @throws IllegalArgumentException when the distribution is unknown or its bounds are missing
+     */
+    static LatencyDistribution read(Config config, String prefix, Duration defaultMedian){
+        String distribution = config.getOptionalValue(prefix + ".distribution", String.class).orElse("fixed");
+        Duration median = config.getOptionalValue(prefix + ".median-millis", Long.class).map(Duration::ofMillis).orElse(defaultMedian);
+        switch(distribution){
+            case "fixed":
+                return fixed(median);
+            case "uniform":
+                return uniform(millis(config, prefix + ".min-millis"), millis(config, prefix + ".max-millis"));
+            case "lognormal":
+                return logNormal(median, millis(config, prefix + ".p99-millis"));
+            default:
+                throw new IllegalArgumentException("Unknown " + prefix + ".distribution " + distribution
+                        + ", expected fixed, uniform or lognormal");
+        }
+    }
+
+    private static Duration millis(Config config, String property){
+        return Duration.ofMillis(config.getOptionalValue(property, Long.class)
+                .orElseThrow(() -> new IllegalArgumentException(property + " is not set")));
+    }
+}
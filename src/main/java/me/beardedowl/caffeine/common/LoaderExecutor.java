@@ -0,0 +1,123 @@
+package me.beardedowl.caffeine.common;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor handed to every Caffeine builder through {@code Caffeine.executor(...)}.
+ * Caffeine uses it for async loads, refreshes, listeners and maintenance. By default that is ForkJoinPool.commonPool(),
+ * which is a bad place for loaders that sleep (or block on IO) because a few thousand cold keys starve the pool.
+ *
+ * The mode is read from microprofile-config.properties
+ *  app.cache.loader.executor   : virtual | platform | common
+ *  app.cache.loader.pool-size  : number of threads used by the "platform" mode
+ *
+ * Same early initialization singleton as CacheSingleton.
+ */
+public final class LoaderExecutor {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(LoaderExecutor.class.getName());
+
+    public enum Mode {
+        /** One virtual thread per load. Needs JDK 21, falls back to PLATFORM on older runtimes */
+        VIRTUAL,
+        /** Fixed size pool of daemon platform threads */
+        PLATFORM,
+        /** ForkJoinPool.commonPool(), which is what Caffeine uses when no executor is configured */
+        COMMON
+    }
+
+    static final String MODE_PROPERTY = "app.cache.loader.executor";
+    static final String POOL_SIZE_PROPERTY = "app.cache.loader.pool-size";
+    static final int DEFAULT_POOL_SIZE = 64;
+
+    private static LoaderExecutor loaderExecutor = new LoaderExecutor(ConfigProvider.getConfig());
+
+    private final Mode mode;
+    private final Executor executor;
+
+    private LoaderExecutor(Config config){
+        this.mode = config.getOptionalValue(MODE_PROPERTY, String.class)
+                .map(value -> Mode.valueOf(value.trim().toUpperCase(Locale.ROOT)))
+                .orElse(Mode.VIRTUAL);
+        int poolSize = config.getOptionalValue(POOL_SIZE_PROPERTY, Integer.class).orElse(DEFAULT_POOL_SIZE);
+        this.executor = create(mode, poolSize);
+        LOGGER.info("Cache loaders will run on the {} executor",mode);
+    }
+
+    public static LoaderExecutor getInstance(){
+        return loaderExecutor;
+    }
+
+    public Executor getExecutor(){
+        return executor;
+    }
+
+    public Mode getMode(){
+        return mode;
+    }
+
+    /**
+     * Builds a new executor for the given mode
+     * @param mode      : Kind of executor
+     * @param poolSize  : Number of threads, only used by Mode.PLATFORM (and by Mode.VIRTUAL when it has to fall back)
+     * @return  Executor which can be passed to Caffeine.executor()
+     */
+    public static Executor create(Mode mode, int poolSize){
+        switch (mode){
+            case VIRTUAL:
+                ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+                if(virtual != null){
+                    return virtual;
+                }
+                LOGGER.warn("Virtual threads are not available on Java {}. Using a pool of {} platform threads",
+                        Runtime.version().feature(),poolSize);
+                return newPlatformPool(poolSize);
+            case PLATFORM:
+                return newPlatformPool(poolSize);
+            case COMMON:
+            default:
+                return ForkJoinPool.commonPool();
+        }
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() only exists (without --enable-preview) from JDK 21 onwards
+     * while this project is compiled for JDK 17, so it is looked up reflectively
+     * @return  Virtual thread executor or null when the runtime does not support it
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor(){
+        try{
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException | UnsupportedOperationException e){
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformPool(int poolSize){
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "cache-loader-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -0,0 +1,177 @@
+package me.beardedowl.caffeine.common;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Gathers the misses of many concurrent requests and loads them with a single call to a bulk loader.
+ *
+ * The first key of a batch opens it, the batch is sent when it holds maxBatchSize keys or when the window is over,
+ * whichever comes first. Every caller gets a future of its own key, completed when the bulk load returns (with null
+ * when the loader did not return the key, exceptionally when it failed). Callers asking for a key already in the open
+ * batch share its future.
+ *
+ * Meant to be plugged in as the loader of an AsyncCache, which does not block any thread while the batch fills up
+ *  asyncCache.get(key, (k, executor) -> batcher.load(k))
+ * A synchronous Cache.get() would park one loader thread per key until the batch is sent.
+ *
+ * Configured from microprofile-config.properties (see create())
+ *  app.cache.loader.batch.window-millis  : how long a batch stays open, 0 sends every key on its own
+ *  app.cache.loader.batch.max-size       : number of keys which sends the batch right away
+ *
+ * Metrics are tagged with loader=name
+ *  cache.loader.batches  : number of calls to the bulk loader
+ *  cache.loader.keys     : number of keys loaded through those calls
+ */
+public final class MicroBatcher<K, V> {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(MicroBatcher.class.getName());
+
+    static final String WINDOW_PROPERTY = "app.cache.loader.batch.window-millis";
+    static final String MAX_SIZE_PROPERTY = "app.cache.loader.batch.max-size";
+
+    // Only closes the windows, the loads themselves run on the executor
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "micro-batcher-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Function<Set<? extends K>, Map<K, V>> bulkLoader;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Executor executor;
+    private final Counter batchCounter;
+    private final Counter keyCounter;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder keys = new LongAdder();
+
+    private final Object lock = new Object();
+    // Batch being filled, null when none is open
+    private Map<K, CompletableFuture<V>> pending;
+
+    /**
+     * @param name          : Name used for the loader tag
+     * @param bulkLoader    : Loads every key of a batch in one call
+     * @param window        : How long a batch stays open, zero to send every key on its own
+     * @param maxBatchSize  : Number of keys which sends the batch before the end of the window
+     * @param executor      : Where the bulk loader runs
+     */
+    public MicroBatcher(String name, Function<Set<? extends K>, Map<K, V>> bulkLoader, Duration window,
+                        int maxBatchSize, Executor executor){
+        if(maxBatchSize < 1){
+            throw new IllegalArgumentException("maxBatchSize must be at least 1, got " + maxBatchSize);
+        }
+        this.bulkLoader = bulkLoader;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.executor = executor;
+        MetricRegistry registry = CacheMetrics.applicationRegistry();
+        Tag loader = new Tag("loader", name);
+        this.batchCounter = registry.counter(CacheMetrics.metadata("cache.loader.batches", "Number of calls to the bulk loader", MetricType.COUNTER, MetricUnits.NONE), loader);
+        this.keyCounter = registry.counter(CacheMetrics.metadata("cache.loader.keys", "Number of keys loaded by the bulk loader", MetricType.COUNTER, MetricUnits.NONE), loader);
+    }
+
+    /**
+     * Batcher configured from microprofile-config.properties, loading on the LoaderExecutor
+     */
+    public static <K, V> MicroBatcher<K, V> create(String name, Function<Set<? extends K>, Map<K, V>> bulkLoader){
+        Config config = ConfigProvider.getConfig();
+        long window = config.getOptionalValue(WINDOW_PROPERTY, Long.class).orElse(2L);
+        int maxSize = config.getOptionalValue(MAX_SIZE_PROPERTY, Integer.class).orElse(64);
+        return new MicroBatcher<>(name, bulkLoader, Duration.ofMillis(window), maxSize, LoaderExecutor.getInstance().getExecutor());
+    }
+
+    /**
+     * @return  Future of the value of the key, completed once the batch holding it has been loaded
+     */
+    public CompletableFuture<V> load(K key){
+        CompletableFuture<V> future;
+        Map<K, CompletableFuture<V>> full = null;
+        synchronized (lock){
+            if(pending == null){
+                pending = new HashMap<>();
+                if(windowNanos > 0){
+                    Map<K, CompletableFuture<V>> batch = pending;
+                    TIMER.schedule(() -> windowClosed(batch), windowNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            future = pending.computeIfAbsent(key, k -> new CompletableFuture<>());
+            if(pending.size() >= maxBatchSize || windowNanos <= 0){
+                full = pending;
+                pending = null;
+            }
+        }
+        if(full != null){
+            send(full);
+        }
+        return future;
+    }
+
+    /**
+     * @return  Number of calls made to the bulk loader
+     */
+    public long batchCount(){
+        return batches.sum();
+    }
+
+    /**
+     * @return  Number of keys sent to the bulk loader
+     */
+    public long keyCount(){
+        return keys.sum();
+    }
+
+    private void windowClosed(Map<K, CompletableFuture<V>> batch){
+        synchronized (lock){
+            // Already sent because it was full
+            if(pending != batch){
+                return;
+            }
+            pending = null;
+        }
+        send(batch);
+    }
+
+    private void send(Map<K, CompletableFuture<V>> batch){
+        try{
+            executor.execute(() -> loadBatch(batch));
+        }catch (RuntimeException e){
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    private void loadBatch(Map<K, CompletableFuture<V>> batch){
+        batches.increment();
+        keys.add(batch.size());
+        batchCounter.inc();
+        keyCounter.inc(batch.size());
+        try{
+            Map<K, V> loaded = bulkLoader.apply(Collections.unmodifiableSet(batch.keySet()));
+            batch.forEach((key, future) -> future.complete(loaded.get(key)));
+        }catch (Throwable t){
+            LOGGER.warn("Bulk load of {} keys failed",batch.size(),t);
+            batch.values().forEach(future -> future.completeExceptionally(t));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package me.beardedowl.caffeine.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * UDP multicast transport of the InvalidationBus : every instance joins the same group and port, a packet sent to the
+ * group reaches all of them without knowing who they are. Several JVMs of the same host can join the group
+ * (the socket reuses the address and multicast loop is on), which is enough to try it locally.
+ *
+ * UDP does not retry : a lost packet leaves the entries it named until they expire. The bus keeps packets under the
+ * MTU so that a packet is not fragmented, which would make a loss more likely.
+ */
+public final class MulticastTransport implements InvalidationTransport {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(MulticastTransport.class.getName());
+
+    // Largest UDP payload
+    private static final int MAX_DATAGRAM = 65507;
+
+    private final InetSocketAddress group;
+    private final NetworkInterface networkInterface;
+    private final MulticastSocket socket;
+
+    /**
+     * @param group             : Multicast address, 239.0.0.0/8 is meant for a site or organisation
+     * @param port              : Same on every instance
+     * @param networkInterface  : Interface to join the group on, null for the default one
+     * @param timeToLive        : Number of routers a packet may cross, 1 keeps it on the local network
+     */
+    public MulticastTransport(InetAddress group, int port, NetworkInterface networkInterface, int timeToLive) throws IOException {
+        if(!group.isMulticastAddress()){
+            throw new IllegalArgumentException(group + " is not a multicast address");
+        }
+        this.group = new InetSocketAddress(group, port);
+        this.networkInterface = networkInterface;
+        this.socket = new MulticastSocket(port);
+        socket.setTimeToLive(timeToLive);
+        socket.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+        if(networkInterface != null){
+            socket.setNetworkInterface(networkInterface);
+        }
+    }
+
+    @Override
+    public void start(Consumer<ByteBuffer> receiver) throws IOException {
+        socket.joinGroup(group, networkInterface);
+        Thread thread = new Thread(() -> receive(receiver), "cache-invalidation-receiver");
+        thread.setDaemon(true);
+        thread.start();
+        LOGGER.info("Joined invalidation group {}",group);
+    }
+
+    private void receive(Consumer<ByteBuffer> receiver){
+        byte[] buffer = new byte[MAX_DATAGRAM];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while(!socket.isClosed()){
+            try{
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                receiver.accept(ByteBuffer.wrap(buffer, 0, packet.getLength()));
+            }catch (SocketException e){
+                // Closed
+                return;
+            }catch (IOException | RuntimeException e){
+                LOGGER.warn("Could not handle an invalidation packet",e);
+            }
+        }
+    }
+
+    @Override
+    public void send(byte[] packet, int length) throws IOException {
+        socket.send(new DatagramPacket(packet, length, group));
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+}
@@ -0,0 +1,173 @@
+package me.beardedowl.caffeine.common;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Spreads the keys of a cache over the instances of the application : each key has one owner (see
+ * ConsistentHashRing), which loads it and keeps it. The other instances ask the owner over HTTP and keep the answer in
+ * a small near-cache for a short time. A cold key is then loaded once for the whole cluster instead of once per
+ * instance, and the cluster holds about one copy of the working set instead of one per instance.
+ *
+ * Configured from microprofile-config.properties
+ *  app.cache.shard.enabled         : false (the default) keeps every key on every instance
+ *  app.cache.shard.self            : base URL of this instance, as written in nodes
+ *  app.cache.shard.nodes           : base URLs of every instance, the same list (in any order) on all of them
+ *  app.cache.shard.virtual-nodes   : points per instance on the ring, 128 by default
+ *  app.cache.shard.timeout-millis  : time given to an owner to answer
+ *
+ * The owner answers with the binary form of the value (its SnapshotCodec). A caller whose owner does not answer in
+ * time loads the key itself (recordFallback()).
+ *
+ * Metrics are tagged with route=local|remote|fallback
+ *  cache.shard.requests  : number of lookups of keys owned by this instance (local) or by another one (remote), and of
+ *                          remote lookups loaded here because the owner failed (fallback)
+ */
+public final class ShardRouter {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ShardRouter.class.getName());
+
+    static final String ENABLED_PROPERTY = "app.cache.shard.enabled";
+    static final String SELF_PROPERTY = "app.cache.shard.self";
+    static final String NODES_PROPERTY = "app.cache.shard.nodes";
+    static final String VIRTUAL_NODES_PROPERTY = "app.cache.shard.virtual-nodes";
+    static final String TIMEOUT_PROPERTY = "app.cache.shard.timeout-millis";
+
+    private static ShardRouter shardRouter = create(ConfigProvider.getConfig());
+
+    private final String self;
+    // null when sharding is disabled
+    private final ConsistentHashRing ring;
+    private final HttpClient client;
+    private final Duration timeout;
+    private final Counter local;
+    private final Counter remote;
+    private final Counter fallback;
+
+    /**
+     * @param self      : Base URL of this instance
+     * @param ring      : Owners of the keys, null to keep every key here
+     * @param timeout   : Time given to an owner to answer
+     */
+    ShardRouter(String self, ConsistentHashRing ring, Duration timeout){
+        this.self = self;
+        this.ring = ring;
+        this.timeout = timeout;
+        this.client = ring == null ? null : HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .executor(LoaderExecutor.getInstance().getExecutor())
+                .build();
+        MetricRegistry registry = CacheMetrics.applicationRegistry();
+        Metadata requests = CacheMetrics.metadata("cache.shard.requests", "Number of lookups by owner of the key", MetricType.COUNTER, MetricUnits.NONE);
+        this.local = registry.counter(requests, new Tag("route", "local"));
+        this.remote = registry.counter(requests, new Tag("route", "remote"));
+        this.fallback = registry.counter(requests, new Tag("route", "fallback"));
+    }
+
+    static ShardRouter create(Config config){
+        Duration timeout = Duration.ofMillis(config.getOptionalValue(TIMEOUT_PROPERTY, Long.class).orElse(1000L));
+        if(!config.getOptionalValue(ENABLED_PROPERTY, Boolean.class).orElse(false)){
+            return new ShardRouter(null, null, timeout);
+        }
+        Optional<String> self = config.getOptionalValue(SELF_PROPERTY, String.class);
+        List<String> nodes = config.getOptionalValue(NODES_PROPERTY, String[].class).map(Arrays::asList).orElse(List.of());
+        if(self.isEmpty() || nodes.isEmpty()){
+            LOGGER.warn("{} and {} are needed for sharding, every key stays on this instance",SELF_PROPERTY,NODES_PROPERTY);
+            return new ShardRouter(null, null, timeout);
+        }
+        if(!nodes.contains(self.get())){
+            LOGGER.warn("{} is not in {}, this instance owns no key",self.get(),NODES_PROPERTY);
+        }
+        int virtualNodes = config.getOptionalValue(VIRTUAL_NODES_PROPERTY, Integer.class).orElse(128);
+        LOGGER.info("Keys are sharded over {}, this instance is {}",nodes,self.get());
+        return new ShardRouter(self.get(), ConsistentHashRing.of(nodes, virtualNodes), timeout);
+    }
+
+    public static ShardRouter getInstance(){
+        return shardRouter;
+    }
+
+    public boolean isEnabled(){
+        return ring != null;
+    }
+
+    /**
+     * @return  Base URL of the instance owning the key, empty when it is this one or sharding is disabled
+     */
+    public Optional<String> remoteOwnerOf(String key){
+        if(ring == null){
+            local.inc();
+            return Optional.empty();
+        }
+        String owner = ring.ownerOf(key);
+        if(owner.equals(self)){
+            local.inc();
+            return Optional.empty();
+        }
+        remote.inc();
+        return Optional.of(owner);
+    }
+
+    /**
+     * @return  The value percent-encoded as one segment of a path, '/' included, so that the owner reads it back as is
+     */
+    public static String pathSegment(String value){
+        // URLEncoder encodes for forms, where a space is '+'
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    /**
+     * Asks the owner for a value
+     * @param owner : Base URL returned by remoteOwnerOf()
+     * @param path  : Path of the owner's endpoint, its segments encoded with pathSegment()
+     * @param codec : Encoding of the value in the body
+     * @return  Future of the value, failed when the owner does not answer 200 in time
+     */
+    public <V> CompletableFuture<V> fetch(String owner, String path, SnapshotCodec<V> codec){
+        URI uri;
+        try{
+            uri = URI.create(owner + path);
+        }catch (IllegalArgumentException e){
+            return CompletableFuture.failedFuture(e);
+        }
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .header("Accept", "application/octet-stream")
+                .GET()
+                .build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).thenApply(response -> {
+            if(response.statusCode() != 200){
+                throw new IllegalStateException(uri + " answered " + response.statusCode());
+            }
+            return codec.read(ByteBuffer.wrap(response.body()));
+        });
+    }
+
+    /**
+     * Counts a lookup done here because its owner failed
+     */
+    public void recordFallback(){
+        fallback.inc();
+    }
+}
@@ -0,0 +1,83 @@
+package me.beardedowl.caffeine.common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoding of cache keys and values, used wherever an entry leaves the heap (snapshot files, off-heap tiers).
+ * The size is asked first so that the caller can reserve exactly the bytes it needs.
+ *
+ * Strings are written as a short holding the number of UTF-8 bytes (-1 for null) followed by the bytes.
+ *
+ * @param <T>   Type of the encoded object
+ */
+public interface SnapshotCodec<T> {
+
+    /**
+     * @return  Number of bytes write() will use
+     * @throws IllegalArgumentException when the value cannot be encoded (for example a string longer than 32767 bytes)
+     */
+    int sizeOf(T value);
+
+    void write(ByteBuffer target, T value);
+
+    T read(ByteBuffer source);
+
+    /**
+     * @return  The value alone in an array of exactly sizeOf() bytes
+     */
+    default byte[] toBytes(T value){
+        ByteBuffer buffer = ByteBuffer.allocate(sizeOf(value));
+        write(buffer, value);
+        return buffer.array();
+    }
+
+    /** Nullable strings */
+    SnapshotCodec<String> STRING = new SnapshotCodec<>() {
+        @Override
+        public int sizeOf(String value) {
+            return sizeOfString(value);
+        }
+
+        @Override
+        public void write(ByteBuffer target, String value) {
+            putString(target, value);
+        }
+
+        @Override
+        public String read(ByteBuffer source) {
+            return getString(source);
+        }
+    };
+
+    static int sizeOfString(String value){
+        if(value == null){
+            return Short.BYTES;
+        }
+        int length = value.getBytes(StandardCharsets.UTF_8).length;
+        if(length > Short.MAX_VALUE){
+            throw new IllegalArgumentException("String of " + length + " bytes is too long to be encoded");
+        }
+        return Short.BYTES + length;
+    }
+
+    static void putString(ByteBuffer target, String value){
+        if(value == null){
+            target.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        target.putShort((short) bytes.length);
+        target.put(bytes);
+    }
+
+    static String getString(ByteBuffer source){
+        int length = source.getShort();
+        if(length < 0){
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
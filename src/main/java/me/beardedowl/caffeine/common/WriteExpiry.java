@@ -0,0 +1,48 @@
+package me.beardedowl.caffeine.common;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.time.Duration;
+
+/**
+ * Same behaviour as Caffeine.expireAfterWrite(duration) : an entry expires a fixed time after it was created or last
+ * replaced, reads do not extend it.
+ *
+ * It goes through Caffeine.expireAfter() instead because a cache built with a variable expiry lets us write an entry
+ * with its own remaining time (policy().expireVariably().put(key, value, duration)), which is what a snapshot restore
+ * needs. With expireAfterWrite a restored entry would get a full time to live again.
+ *
+ * The duration can be changed while the cache is in use (see CacheRegistry.setExpireAfterWrite()), entries written
+ * from then on get the new one.
+ */
+public class WriteExpiry<K, V> implements Expiry<K, V> {
+
+    private volatile long expireAfterWriteNanos;
+
+    public WriteExpiry(Duration expireAfterWrite){
+        this.expireAfterWriteNanos = expireAfterWrite.toNanos();
+    }
+
+    public long getExpireAfterWriteNanos(){
+        return expireAfterWriteNanos;
+    }
+
+    public void setExpireAfterWrite(Duration expireAfterWrite){
+        this.expireAfterWriteNanos = expireAfterWrite.toNanos();
+    }
+
+    @Override
+    public long expireAfterCreate(K key, V value, long currentTime) {
+        return expireAfterWriteNanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+        return expireAfterWriteNanos;
+    }
+
+    @Override
+    public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+}
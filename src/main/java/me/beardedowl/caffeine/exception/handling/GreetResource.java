@@ -1,24 +1,38 @@
 
 package me.beardedowl.caffeine.exception.handling;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
 import jakarta.inject.Inject;
+import jakarta.json.JsonObject;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import me.beardedowl.caffeine.common.CacheDump;
+import me.beardedowl.caffeine.common.CacheRegistry;
+import me.beardedowl.caffeine.common.CacheSettings;
+import me.beardedowl.caffeine.common.CacheSnapshots;
+import me.beardedowl.caffeine.common.CacheWarmer;
+import me.beardedowl.caffeine.common.HotKeyRefresher;
+import me.beardedowl.caffeine.common.InvalidationBus;
+import me.beardedowl.caffeine.common.JitteredExpiry;
+import me.beardedowl.caffeine.common.RemovalLogger;
+import me.beardedowl.caffeine.common.SnapshotCodec;
+import me.beardedowl.caffeine.common.WriteExpiry;
+import me.beardedowl.caffeine.singleton.cache.UserRepository;
+import org.eclipse.microprofile.config.ConfigProvider;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
-import java.time.Instant;
-import java.util.HashSet;
-import java.util.NoSuchElementException;
+import java.util.List;
 import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.TimeUnit;
 
 /**
  * A simple JAX-RS resource to greet you. Examples:
@@ -45,25 +59,54 @@ public class GreetResource {
 
     private static Logger LOGGER = LoggerFactory.getLogger(GreetResource.class.getName());
 
-    private Set<String> invalidNames = new HashSet<>();
+    private static final String CACHE_NAME = "greet-message";
 
-    private LoadingCache<String,Optional<Message>> messageCache = Caffeine.newBuilder()
-            .expireAfterWrite(2, TimeUnit.MINUTES)
-            .refreshAfterWrite(1,TimeUnit.MINUTES)
+    static final String INVALID_NAMES_EXPECTED_PROPERTY = "app.greet.invalid-names.expected-size";
+
+    private UserRepository repository = UserRepository.getInstance();
+
+    // Written by the /invalid endpoints while the loaders read it, see InvalidNameRegistry
+    private InvalidNameRegistry invalidNames = new InvalidNameRegistry(
+            ConfigProvider.getConfig().getOptionalValue(INVALID_NAMES_EXPECTED_PROPERTY, Long.class).orElse(100_000L), 0.01);
+
+    // app.cache.greet-message.* (see CacheSettings), refreshed after 1 minute unless configured otherwise
+    private static final CacheSettings SETTINGS = CacheRegistry.getInstance().settings(CACHE_NAME)
+            .orRefreshAfterWrite(Duration.ofMinutes(1));
+
+    // 2 minutes on average unless configured otherwise, jittered so that entries loaded together do not expire together
+    private final JitteredExpiry<String,Optional<Message>> messageExpiry =
+            JitteredExpiry.of(SETTINGS.getExpireAfterWrite().orElse(Duration.ofMinutes(2)));
+
+    private LoadingCache<String,Optional<Message>> messageCache = SETTINGS.newBuilder(CACHE_NAME, messageExpiry, null)
             /**
              *  Eviction         : eviction means removal due to the policy
              *  Invalidation     : invalidation means manual removal by the caller
              *  Removal          : removal occurs as a consequence of invalidation or eviction
+             *  Removals are counted per cause and logged as one line every few seconds (see RemovalLogger)
              */
-            .evictionListener((key,value,reason) -> {
-                LOGGER.warn("Expiring cache key '{}' with value '{}' --- '{}'",key,value,reason);
-            })
-            .removalListener((key,value,reason) -> {
-                LOGGER.warn("Removing cache key '{}' with value '{}' --- '{}'",key,value,reason) ;
-            })
-            .recordStats()
+            .removalListener(RemovalLogger.<String, Optional<Message>>of(CACHE_NAME))
             .build(this::createResponse);
 
+    private static final String NEGATIVE_CACHE_NAME = "greet-negative";
+
+    // app.cache.greet-negative.* (see CacheSettings), bounded to 10000 names unless configured otherwise
+    private static final CacheSettings NEGATIVE_SETTINGS = CacheRegistry.getInstance().settings(NEGATIVE_CACHE_NAME)
+            .orMaximumSize(10_000L);
+
+    private final WriteExpiry<String,Boolean> negativeExpiry = NEGATIVE_SETTINGS.newExpiry(Duration.ofSeconds(30));
+
+    /**
+     * Names without a greeting (invalid name, unknown user, or no value while raiseException is set), kept for a short
+     * time so that requests for them are answered with a 404 without going back to the loader. Failures of the loader
+     * are not kept, the next request tries again. Bounded, so that a scraper trying random names cannot grow it without
+     * limit. Its stats are exported separately under cache=greet-negative
+     */
+    private Cache<String,Boolean> negativeCache = NEGATIVE_SETTINGS.<String,Boolean>newBuilder(NEGATIVE_CACHE_NAME, negativeExpiry, null)
+            .build();
+
+    // Refreshes the keys being read before they expire, started with the bean
+    private HotKeyRefresher<String,Optional<Message>> refresher;
+
     /**
      * Using constructor injection to get a configuration property.
      * By default this gets the value from META-INF/microprofile-config
@@ -75,27 +118,44 @@ public class GreetResource {
         this.greetingController = greetingConfig;
     }
 
+    @PostConstruct
+    void bindCache(){
+        CacheRegistry.getInstance().register(CACHE_NAME, messageCache, messageExpiry);
+        CacheRegistry.getInstance().register(NEGATIVE_CACHE_NAME, negativeCache, negativeExpiry);
+        refresher = HotKeyRefresher.start(CACHE_NAME, messageCache);
+        CacheSnapshots.getInstance().register(CACHE_NAME, messageCache, SnapshotCodec.STRING, MessageCodec.INSTANCE);
+        InvalidationBus.getInstance().register(CACHE_NAME, messageCache, SnapshotCodec.STRING);
+        CacheWarmer.getInstance().register(CACHE_NAME, messageCache, messageCache::get);
+    }
+
+    @PreDestroy
+    void stopRefresher(){
+        refresher.close();
+    }
+
+    /**
+     * Creates the bean, hence restores its cache, while the container starts and before the server takes traffic
+     */
+    void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event){
+        LOGGER.info("Greet cache ready with {} entries",messageCache.estimatedSize());
+    }
+
     /**
      * Return a worldly greeting message.
+     * Same as getMessage("World"), a 404 when there is no greeting for it
      *
      * @return {@link Message}
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Message getDefaultMessage() {
-        String fName = "getDefaultMessage";
-        Instant start = Instant.now();
-        try{
-            return messageCache.get("World").get();
-        }
-        finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} completed in {} ms",fName,duration.toMillis());
-        }
+        return getMessage("World");
     }
 
     /**
      * Return a greeting message using the name that was provided.
+     * A name without a greeting is answered with a 404, straight from the negative cache when it was looked up recently.
+     * Any other failure of the loader is a 500
      *
      * @param name the name to greet
      * @return {@link Message}
@@ -104,53 +164,87 @@ public class GreetResource {
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Message getMessage(@PathParam("name") String name) {
-        String fName = "getMessage";
-        Instant start = Instant.now();
+        if(negativeCache.getIfPresent(name) != null){
+            throw new NotFoundException(String.format("No greeting for %s",name));
+        }
+        refresher.recordRead(name);
+        Optional<Message> message;
         try{
-            return messageCache.get(name).get();
+            message = messageCache.get(name);
         }
-        catch(NoSuchElementException e){
-            LOGGER.error("No value present");
-            throw e;
+        catch(InvalidNameException e){
+            message = Optional.empty();
         }
-        finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} completed in {} ms",fName,duration.toMillis());
+        if(message.isEmpty()){
+            // The loader returned the empty value to the cache as well : only the negative cache keeps the name, with
+            // its own (shorter) expiry, and the next lookup once it expires goes back to the loader
+            negativeCache.put(name, Boolean.TRUE);
+            messageCache.invalidate(name);
+            throw new NotFoundException(String.format("No greeting for %s",name));
         }
+        return message.get();
+    }
+
+    /**
+     * Changes the greeting. Every cached message was built with the previous one, so the cache is emptied here and on
+     * the other instances (see InvalidationBus). The greeting itself is kept per instance, the other instances
+     * reload their messages with their own
+     * curl -X PUT -H "Content-Type: application/json" -d '{"greeting" : "Hola"}' http://localhost:8081/greet/greeting
+     * @param jsonObject    : {"greeting" : "..."}
+     * @return  204, 400 when no greeting is given
+     */
+    @PUT
+    @Path("/greeting")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response updateGreeting(JsonObject jsonObject){
+        if(jsonObject == null || !jsonObject.containsKey("greeting")){
+            return Response.status(Response.Status.BAD_REQUEST).entity("No greeting provided").build();
+        }
+        greetingController.setMessage(jsonObject.getString("greeting"));
+        InvalidationBus.getInstance().invalidateAll(CACHE_NAME);
+        LOGGER.info("Greeting changed, greet cache invalidated");
+        return Response.status(Response.Status.NO_CONTENT).build();
     }
 
     @POST
     @Path("/invalid/{name}")
     public Response addInvalidName(@PathParam("name") String name){
-        String fName = "addInvalidName";
-        Instant start = Instant.now();
-        try{
-            LOGGER.info("Adding {} to invalidNames list",name);
-            invalidNames.add(name);
-            return Response.status(Response.Status.OK).entity(invalidNames.toString()).build();
-        }
-        finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} completed in {} ms",fName,duration.toMillis());
-        }
+        LOGGER.info("Adding {} to invalidNames list",name);
+        invalidNames.add(name);
+        String message = String.format("%d invalid names",invalidNames.size());
+        return Response.status(Response.Status.OK).entity(message).build();
 
     }
 
+    /**
+     * Adds many invalid names at once
+     * curl -X POST -H "Content-Type: application/json" -d '["Bot1","Bot2"]' http://localhost:8081/greet/invalid
+     * @param names : Names to add, a JSON array
+     * @return  Number of names added and number of invalid names
+     */
+    @POST
+    @Path("/invalid")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response addInvalidNames(List<String> names){
+        if(names == null){
+            return Response.status(Response.Status.BAD_REQUEST).entity("A JSON array of names is expected").build();
+        }
+        int added = invalidNames.addAll(names);
+        LOGGER.info("Added {} names to invalidNames list",added);
+        String message = String.format("%d names added, %d invalid names",added,invalidNames.size());
+        return Response.status(Response.Status.OK).entity(message).build();
+    }
+
     @PATCH
     @Path("/toggle-raise-exception")
     public Response toggleRaiseException(){
-        String fName = "toggleRaiseException";
-        Instant start = Instant.now();
-        try{
-            boolean newValue = ! greetingController.getRaiseException().get();
-            greetingController.setRaiseException(newValue);
-            String message = String.format("New value of raiseException variable is : %s",newValue);
-            return Response.status(Response.Status.OK).entity(message).build();
-        }
-        finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} completed in {} ms",fName,duration.toMillis());
-        }
+        boolean newValue = ! greetingController.getRaiseException().get();
+        greetingController.setRaiseException(newValue);
+        // The failures recorded so far may not hold anymore, nor the empty values refreshes may have left in the cache
+        negativeCache.invalidateAll();
+        messageCache.asMap().values().removeIf(Optional::isEmpty);
+        String message = String.format("New value of raiseException variable is : %s",newValue);
+        return Response.status(Response.Status.OK).entity(message).build();
     }
 
     /**
@@ -158,23 +252,26 @@ public class GreetResource {
      * This is used by cache for loading new data
      * We can simulate behavior of cache when we are not able to get data (and an exception is thrown) by toggling the value of "raiseException" behavior
      * For this, use the PATCH /greet/toggle-raise-exception
+     * A failure of the UserRepository (see app.user-repository.error-rate) is a failed load as well
      *
      * @param who
      * @return
-     * @throws InterruptedException
      */
-    private Optional<Message> createResponse(String who) throws InterruptedException {
+    private Optional<Message> createResponse(String who) {
         if(greetingController.getRaiseException().get()){
             LOGGER.error("Returning null value...");
             return Optional.empty();
         }
         else if(invalidNames.contains(who)){
             LOGGER.error("Invalid name...");
-            throw new RuntimeException();
+            throw new InvalidNameException(who);
         }
         LOGGER.warn("Message not found in cache for {}. Building...",who);
-        LOGGER.info("Thread sleeping for {} ms",3000);
-        Thread.sleep(3000); //ms
+        // Only greets known users, with the latency and failures of the UserRepository
+        if(repository.findByName(who).isEmpty()){
+            LOGGER.error("Unknown user {}...",who);
+            return Optional.empty();
+        }
         String msg = String.format("%s %s!", greetingController.getMessage(), who);
 
         return Optional.of(new Message(msg));
@@ -182,22 +279,20 @@ public class GreetResource {
 
     // Endpoints for cache info
     /**
-     * Converts the cache into a string and returns it to user
+     * Streams one page of the cache as newline delimited JSON (see CacheDump)
      * Note that this does not refresh the cache BUT it removes the entries which have been marked as expired
-     * Also, I believe that both the key and value objects should have toString() overridden
-     * @return  Cache data in a key-value pair
+     * @param prefix    : Only keys starting with this prefix are returned
+     * @param cursor    : X-Next-Cursor header of the previous page
+     * @param limit     : Maximum number of entries in the page
+     * @return  Cache data in key-value pairs, one per line
      */
     @GET
     @Path("/cache/message/data")
-    public String getMessageCacheData(){
-        Instant start = Instant.now();
-        String fName = "getMessageCacheData";
-        try{
-            return messageCache.asMap().entrySet().toString();
-        } finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} operation completed in {} ms", fName,duration.toMillis());
-        }
+    @Produces(CacheDump.NDJSON)
+    public Response getMessageCacheData(@QueryParam("prefix") String prefix,
+                                        @QueryParam("cursor") String cursor,
+                                        @QueryParam("limit") Integer limit){
+        return CacheDump.page(messageCache, prefix, cursor, limit, message -> message.orElse(null));
     }
 
     /**
@@ -208,14 +303,17 @@ public class GreetResource {
     @GET
     @Path("/cache/message/stats")
     public String getMessageCacheStats(){
-        Instant start = Instant.now();
-        String fName = "getMessageCacheStats";
-        try{
-            return messageCache.stats().toString();
-        } finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} operation completed in {} ms", fName,duration.toMillis());
-        }
+        return messageCache.stats().toString();
+    }
+
+    /**
+     * Get stats of the negative cache : a hit is a request for a known-bad name which did not reach the loader
+     * @return Cache stats
+     */
+    @GET
+    @Path("/cache/negative/stats")
+    public String getNegativeCacheStats(){
+        return negativeCache.stats().toString();
     }
 
 }
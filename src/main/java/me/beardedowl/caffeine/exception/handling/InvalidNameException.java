@@ -0,0 +1,13 @@
+package me.beardedowl.caffeine.exception.handling;
+
+/**
+ * Thrown by the loader of GreetResource for a name of the InvalidNameRegistry. Unlike the other failures of the loader
+ * (e.g. the UserRepository being down) it says the name has no greeting, so it is answered with a 404 and the name is
+ * kept in the negative cache
+ */
+final class InvalidNameException extends RuntimeException {
+
+    InvalidNameException(String name) {
+        super("Invalid name " + name);
+    }
+}
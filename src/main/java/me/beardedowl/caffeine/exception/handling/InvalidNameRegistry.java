@@ -0,0 +1,61 @@
+package me.beardedowl.caffeine.exception.handling;
+
+import me.beardedowl.caffeine.common.BloomFilter;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Names GreetResource refuses to greet, read on every load and written by POST /greet/invalid.
+ *
+ * The names are kept in a concurrent set, fronted by a Bloom filter : most names looked up are valid, and for them
+ * the filter answers "no" from a few bit reads without hashing into the set. Neither structure takes a lock, readers
+ * are never blocked by writers.
+ *
+ * A name is added to the set before the filter, so contains() can only start answering true once the name is fully
+ * added. Names are never removed (a Bloom filter cannot forget).
+ */
+public final class InvalidNameRegistry {
+
+    private final Set<String> names = ConcurrentHashMap.newKeySet();
+    private final BloomFilter filter;
+
+    /**
+     * @param expectedNames     : Number of names the Bloom filter is sized for, more still works with more false positives
+     * @param falsePositiveRate : Share of valid names which go past the filter and are checked against the set
+     */
+    public InvalidNameRegistry(long expectedNames, double falsePositiveRate){
+        this.filter = new BloomFilter(expectedNames, falsePositiveRate);
+    }
+
+    /**
+     * @return  true when the name was not already registered
+     */
+    public boolean add(String name){
+        boolean added = names.add(name);
+        filter.put(name);
+        return added;
+    }
+
+    /**
+     * @return  Number of names which were not already registered
+     */
+    public int addAll(Collection<String> newNames){
+        int added = 0;
+        for(String name : newNames){
+            if(name != null && add(name)){
+                added++;
+            }
+        }
+        return added;
+    }
+
+    public boolean contains(String name){
+        return filter.mightContain(name) && names.contains(name);
+    }
+
+    public int size(){
+        return names.size();
+    }
+}
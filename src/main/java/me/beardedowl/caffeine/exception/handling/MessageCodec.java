@@ -0,0 +1,47 @@
+package me.beardedowl.caffeine.exception.handling;
+
+import me.beardedowl.caffeine.common.SnapshotCodec;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * Binary form of the values of the GreetResource cache, used by its snapshot
+ *  byte    1 when a message is present, 0 for Optional.empty()
+ *  string  message
+ *  string  greeting
+ */
+final class MessageCodec implements SnapshotCodec<Optional<Message>> {
+
+    static final MessageCodec INSTANCE = new MessageCodec();
+
+    private MessageCodec(){
+    }
+
+    @Override
+    public int sizeOf(Optional<Message> value) {
+        if(value.isEmpty()){
+            return Byte.BYTES;
+        }
+        return Byte.BYTES + SnapshotCodec.sizeOfString(value.get().getMessage()) + SnapshotCodec.sizeOfString(value.get().getGreeting());
+    }
+
+    @Override
+    public void write(ByteBuffer target, Optional<Message> value) {
+        target.put((byte) (value.isPresent() ? 1 : 0));
+        if(value.isPresent()){
+            SnapshotCodec.putString(target, value.get().getMessage());
+            SnapshotCodec.putString(target, value.get().getGreeting());
+        }
+    }
+
+    @Override
+    public Optional<Message> read(ByteBuffer source) {
+        if(source.get() == 0){
+            return Optional.empty();
+        }
+        Message message = new Message(SnapshotCodec.getString(source));
+        message.setGreeting(SnapshotCodec.getString(source));
+        return Optional.of(message);
+    }
+}
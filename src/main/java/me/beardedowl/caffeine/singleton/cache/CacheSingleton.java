@@ -1,18 +1,53 @@
 package me.beardedowl.caffeine.singleton.cache;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import jakarta.enterprise.context.ApplicationScoped;
+import me.beardedowl.caffeine.common.CacheRegistry;
+import me.beardedowl.caffeine.common.CacheSettings;
+import me.beardedowl.caffeine.common.CacheSnapshots;
+import me.beardedowl.caffeine.common.InvalidationBus;
+import me.beardedowl.caffeine.common.RemovalLogger;
+import me.beardedowl.caffeine.common.SnapshotCodec;
+import me.beardedowl.caffeine.common.WriteExpiry;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * This is a singleton thread-safe pattern.
  * To deal with multithreading issue, I am doing early initialization of the cacheSingleton object
  * Refer to https://www.baeldung.com/java-singleton-double-checked-locking#1-early-initialization
+ *
+ * Without a bound the cache keeps every key it has seen for 2 minutes, which is an OOM with enough distinct keys.
+ * The bound comes from microprofile-config.properties, only one of the two can be used
+ *  app.cache.message.maximum-size     : maximum number of entries
+ *  app.cache.message.maximum-weight   : maximum estimated size in bytes (see UserDTOWeigher)
+ * along with the other settings of CacheSettings (expiry, stats). Both caches are registered in the CacheRegistry.
+ *
+ * Optionally, entries evicted because of that bound are kept in an off-heap second level (see OffHeapUserStore)
+ *  app.cache.message.l2.capacity-bytes : size of the off-heap buffer, 0 (the default) disables it
+ * Callers pass their loader through withSecondLevel() so that a miss checks the second level before loading.
+ *
+ * The name + surname lookups have a cache of their own, keyed by UserNameKey (getSurnameCache()), tuned separately
+ * under app.cache.message-surname.* and with no second level.
+ *
+ * The instance returned by getInstance() is restored from, and periodically written to, a snapshot (see CacheSnapshots).
+ * Its invalidations reach the other instances of the application through the InvalidationBus.
+ * CacheSingletonStartup makes sure this happens before the server takes traffic.
  */
 @ApplicationScoped
 public class CacheSingleton {
@@ -23,26 +58,210 @@ public class CacheSingleton {
     // It ensures that changes made to a volatile variable by one thread are immediately visible to other threads.
     private volatile Cache<String, List<UserDTO>> messageCache;
 
-    private static CacheSingleton cacheSingleton = new CacheSingleton();
+    // The cache is built as an AsyncCache so that callers which do not want to block (see SanchayMTSafeService)
+    // can load values in parallel per key. messageCache is a synchronous view over the same entries.
+    private volatile AsyncCache<String, List<UserDTO>> asyncMessageCache;
 
-    private CacheSingleton(){
-        this.messageCache = Caffeine.newBuilder()
-                .expireAfterWrite(2, TimeUnit.MINUTES)
+    private volatile AsyncCache<UserNameKey, List<UserDTO>> asyncSurnameCache;
+    private volatile Cache<UserNameKey, List<UserDTO>> surnameCache;
+
+    // Kept so that the time to live can be changed at runtime (see CacheRegistry.setExpireAfterWrite())
+    private final SecondLevelExpiry messageExpiry;
+    private final WriteExpiry<UserNameKey, List<UserDTO>> surnameExpiry;
+
+    static final String CACHE_NAME = "message";
+    static final String SURNAME_CACHE_NAME = "message-surname";
+    static final String L2_CAPACITY_PROPERTY = "app.cache.message.l2.capacity-bytes";
+    // Time to live of both caches unless app.cache.<name>.expire-after-write-seconds says otherwise
+    static final Duration DEFAULT_EXPIRE_AFTER_WRITE = Duration.ofMinutes(2);
+
+    // Counts the removals, logged once per period rather than once per entry
+    private static final RemovalLogger<String, List<UserDTO>> REMOVAL_LOGGER = RemovalLogger.of(CACHE_NAME);
+
+    // null when the second level is disabled
+    private final OffHeapUserStore<String> secondLevel;
+
+    private static CacheSingleton cacheSingleton = new CacheSingleton(ConfigProvider.getConfig());
+
+    private CacheSingleton(Config config){
+        this(CacheRegistry.getInstance().settings(CACHE_NAME),
+                CacheRegistry.getInstance().settings(SURNAME_CACHE_NAME),
+                config.getOptionalValue(L2_CAPACITY_PROPERTY, Integer.class).orElse(0));
+        CacheRegistry.getInstance().register(CACHE_NAME, asyncMessageCache, messageExpiry);
+        CacheRegistry.getInstance().register(SURNAME_CACHE_NAME, asyncSurnameCache, surnameExpiry);
+        CacheSnapshots.getInstance().register(CACHE_NAME, messageCache, SnapshotCodec.STRING, UserDTOCodec.INSTANCE);
+        CacheSnapshots.getInstance().register(SURNAME_CACHE_NAME, surnameCache, UserNameKeyCodec.INSTANCE, UserDTOCodec.INSTANCE);
+        // Invalidations must also reach the keys spilled to the second level, which are no longer in the cache
+        InvalidationBus.getInstance().register(CACHE_NAME, messageCache, SnapshotCodec.STRING, secondLevel);
+        InvalidationBus.getInstance().register(SURNAME_CACHE_NAME, surnameCache, UserNameKeyCodec.INSTANCE, UserNameKey::getUserName);
+    }
+
+    CacheSingleton(Optional<Long> maximumSize, Optional<Long> maximumWeight){
+        this(maximumSize, maximumWeight, 0);
+    }
+
+    /**
+     * Only used directly by tests, everything else goes through getInstance()
+     * @param maximumSize   : Maximum number of entries
+     * @param maximumWeight : Maximum weight as computed by UserDTOWeigher, takes precedence over maximumSize
+     * @param l2CapacityBytes   : Size of the off-heap second level, 0 to disable it
+     */
+    CacheSingleton(Optional<Long> maximumSize, Optional<Long> maximumWeight, int l2CapacityBytes){
+        this(new CacheSettings(maximumSize, maximumWeight, Optional.empty(), Optional.empty(), true),
+                new CacheSettings(maximumSize, maximumWeight, Optional.empty(), Optional.empty(), true),
+                l2CapacityBytes);
+    }
+
+    private CacheSingleton(CacheSettings messageSettings, CacheSettings surnameSettings, int l2CapacityBytes){
+        this.secondLevel = l2CapacityBytes > 0 ? new OffHeapUserStore<>(l2CapacityBytes) : null;
+        // Expires through a variable expiry so that a snapshot restore keeps the remaining time (see CacheSettings)
+        this.messageExpiry = new SecondLevelExpiry(messageSettings.getExpireAfterWrite().orElse(DEFAULT_EXPIRE_AFTER_WRITE));
+        Caffeine<String, List<UserDTO>> builder = messageSettings.newBuilder(CACHE_NAME, messageExpiry, new UserDTOWeigher())
                 .evictionListener((key,value,reason) -> {
-                    LOGGER.warn("Expiring cache key '{}' with value '{}' --- '{}'",key,value,reason);
+                    // Evicted only to make room, the value is still good : spill it to the second level for the time
+                    // it has left (the entry can still be read from the eviction listener)
+                    if(secondLevel != null && reason == RemovalCause.SIZE && value != null){
+                        messageCache.policy().expireVariably()
+                                .flatMap(expiry -> expiry.getExpiresAfter(key))
+                                .filter(remaining -> !remaining.isNegative() && !remaining.isZero())
+                                .ifPresent(remaining -> secondLevel.put(key, value, remaining.toNanos()));
+                    }
                 })
                 .removalListener((key,value,reason) -> {
-                    LOGGER.warn("Removing cache key '{}' with value '{}' --- '{}'",key,value,reason) ;
-                })
-                .recordStats()
-                .build();
+                    REMOVAL_LOGGER.onRemoval(key, value, reason);
+                    // Invalidated without the InvalidationBus (which also invalidates the second level itself), it must
+                    // not come back from the second level
+                    if(secondLevel != null && reason == RemovalCause.EXPLICIT){
+                        secondLevel.invalidate(key);
+                    }
+                });
+        this.asyncMessageCache = builder.buildAsync();
+        this.messageCache = asyncMessageCache.synchronous();
+
+        this.surnameExpiry = surnameSettings.newExpiry(DEFAULT_EXPIRE_AFTER_WRITE);
+        this.asyncSurnameCache = surnameSettings.newBuilder(SURNAME_CACHE_NAME, surnameExpiry, new UserDTOWeigher())
+                .removalListener(RemovalLogger.<UserNameKey, List<UserDTO>>of(SURNAME_CACHE_NAME))
+                .buildAsync();
+        this.surnameCache = asyncSurnameCache.synchronous();
     }
 
     public Cache<String,List<UserDTO>> getMessageCache(){
         return messageCache;
     }
 
+    public AsyncCache<String,List<UserDTO>> getAsyncMessageCache(){
+        return asyncMessageCache;
+    }
+
+    public Cache<UserNameKey,List<UserDTO>> getSurnameCache(){
+        return surnameCache;
+    }
+
+    public AsyncCache<UserNameKey,List<UserDTO>> getAsyncSurnameCache(){
+        return asyncSurnameCache;
+    }
+
+    /**
+     * Wraps a loader so that a miss is first served from the off-heap second level, if the key was spilled there
+     * @param loader    : Loader to call when the second level does not have the key either
+     * @return  Mapping function to pass to Cache.get() / AsyncCache.get()
+     */
+    public Function<String, List<UserDTO>> withSecondLevel(Function<String, List<UserDTO>> loader){
+        if(secondLevel == null){
+            return loader;
+        }
+        return key -> {
+            OffHeapUserStore.Record spilled = secondLevel.take(key);
+            if(spilled != null){
+                LOGGER.info("Found key {} in the off-heap second level",key);
+                return messageExpiry.restore(key, spilled);
+            }
+            return loader.apply(key);
+        };
+    }
+
+    /**
+     * Bulk counterpart of withSecondLevel() for Cache.getAll() : the keys found in the second level are served from
+     * there and only the remaining ones are passed to the loader, in a single call
+     * @param loader    : Batched loader for the keys the second level does not have
+     * @return  Mapping function to pass to Cache.getAll()
+     */
+    public Function<Set<? extends String>, Map<String, List<UserDTO>>> withSecondLevelAll(
+            Function<Set<? extends String>, Map<String, List<UserDTO>>> loader){
+        if(secondLevel == null){
+            return loader;
+        }
+        return keys -> {
+            Map<String, List<UserDTO>> result = new HashMap<>();
+            Set<String> missing = new HashSet<>();
+            for(String key : keys){
+                OffHeapUserStore.Record spilled = secondLevel.take(key);
+                if(spilled != null){
+                    result.put(key, messageExpiry.restore(key, spilled));
+                }
+                else{
+                    missing.add(key);
+                }
+            }
+            LOGGER.info("Found {} of {} keys in the off-heap second level",result.size(),keys.size());
+            if(!missing.isEmpty()){
+                result.putAll(loader.apply(missing));
+            }
+            return result;
+        };
+    }
+
     public static CacheSingleton getInstance(){
         return cacheSingleton;
     }
+
+    /**
+     * WriteExpiry of the message cache, except that a value taken back from the second level gets the time it had left
+     * instead of a new time to live, so that it cannot live forever by moving between the two levels.
+     *
+     * The loader cannot write the entry itself with policy().expireVariably().put() (it is computing that same key),
+     * it leaves the deadline here and the expiry picks it up when the value it returned is written.
+     */
+    private static final class SecondLevelExpiry extends WriteExpiry<String, List<UserDTO>> {
+
+        private final Map<String, Restored> restored = new ConcurrentHashMap<>();
+
+        private SecondLevelExpiry(Duration expireAfterWrite){
+            super(expireAfterWrite);
+        }
+
+        List<UserDTO> restore(String key, OffHeapUserStore.Record spilled){
+            restored.put(key, new Restored(spilled.getUsers(), System.nanoTime() + spilled.getRemainingNanos()));
+            return spilled.getUsers();
+        }
+
+        @Override
+        public long expireAfterCreate(String key, List<UserDTO> value, long currentTime) {
+            return expiresAfter(key, value, currentTime, super.expireAfterCreate(key, value, currentTime));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, List<UserDTO> value, long currentTime, long currentDuration) {
+            return expiresAfter(key, value, currentTime, super.expireAfterUpdate(key, value, currentTime, currentDuration));
+        }
+
+        private long expiresAfter(String key, List<UserDTO> value, long currentTime, long otherwise){
+            Restored deadline = restored.remove(key);
+            // Another value was written for the key since it was taken from the second level : it gets a full lifetime
+            if(deadline == null || deadline.users != value){
+                return otherwise;
+            }
+            return Math.max(0L, deadline.expiresAt - currentTime);
+        }
+    }
+
+    private static final class Restored {
+        private final List<UserDTO> users;
+        private final long expiresAt;
+
+        private Restored(List<UserDTO> users, long expiresAt){
+            this.users = users;
+            this.expiresAt = expiresAt;
+        }
+    }
 }
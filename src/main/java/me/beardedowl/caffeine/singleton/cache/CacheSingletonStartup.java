@@ -0,0 +1,22 @@
+package me.beardedowl.caffeine.singleton.cache;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CacheSingleton is created on first use, which would be the first request. Touching it while the CDI container
+ * starts, before Helidon opens the server port, restores its snapshot ahead of any traffic.
+ */
+@ApplicationScoped
+public class CacheSingletonStartup {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(CacheSingletonStartup.class.getName());
+
+    void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event){
+        long entries = CacheSingleton.getInstance().getMessageCache().estimatedSize();
+        LOGGER.info("Message cache ready with {} entries",entries);
+    }
+}
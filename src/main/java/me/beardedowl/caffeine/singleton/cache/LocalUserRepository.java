@@ -0,0 +1,173 @@
+package me.beardedowl.caffeine.singleton.cache;
+
+import me.beardedowl.caffeine.common.LatencyDistribution;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Stand-in for a real user backend, so that the caches can be tried against a backend which is slow, sometimes fails
+ * and can only take so many calls at once.
+ *
+ * Every call, single or bulk, costs one delay from the latency distribution. A call fails with the given probability,
+ * after the delay like a timeout would. Calls over the concurrency limit wait for a free slot and fail if none frees
+ * up in time.
+ *
+ * Users come from a file of "userName,surName" lines (the surname may be empty, # starts a comment). Without a file
+ * every name exists : a user is made up for each lookup, with a new id each time, as the loaders used to do.
+ *
+ * Configured from microprofile-config.properties
+ *  app.user-repository.latency.*              : see LatencyDistribution, 3 s fixed by default
+ *  app.user-repository.error-rate             : probability of a call failing, 0 by default
+ *  app.user-repository.max-concurrency        : calls served at once, 0 (the default) for no limit
+ *  app.user-repository.acquire-timeout-millis : how long a call over the limit waits
+ *  app.user-repository.file                   : users, every name exists when unset
+ */
+public final class LocalUserRepository implements UserRepository {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(LocalUserRepository.class.getName());
+
+    static final String PREFIX = "app.user-repository.";
+    static final Duration DEFAULT_LATENCY = Duration.ofSeconds(3);
+
+    private final LatencyDistribution latency;
+    private final double errorRate;
+    private final int maxConcurrency;
+    // null when there is no limit
+    private final Semaphore permits;
+    private final Duration acquireTimeout;
+    // Users per name, null when every name exists
+    private final Map<String, List<UserDTO>> users;
+
+    /**
+     * @param latency           : Delay of every call
+     * @param errorRate         : Probability of a call failing, from 0 to 1
+     * @param maxConcurrency    : Calls served at once, 0 for no limit
+     * @param acquireTimeout    : How long a call over the limit waits
+     * @param users             : Users per name, null to make up a user for every name
+     */
+    LocalUserRepository(LatencyDistribution latency, double errorRate, int maxConcurrency, Duration acquireTimeout,
+                        Map<String, List<UserDTO>> users){
+        if(errorRate < 0 || errorRate > 1){
+            throw new IllegalArgumentException("errorRate must be between 0 and 1, got " + errorRate);
+        }
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+        this.acquireTimeout = acquireTimeout;
+        this.users = users;
+    }
+
+    static LocalUserRepository create(Config config){
+        Map<String, List<UserDTO>> users = null;
+        Optional<String> file = config.getOptionalValue(PREFIX + "file", String.class);
+        if(file.isPresent()){
+            try{
+                users = readUsers(Paths.get(file.get()));
+                LOGGER.info("Read {} names from {}",users.size(),file.get());
+            }catch (IOException e){
+                LOGGER.warn("Could not read users from {}, every name exists",file.get(),e);
+            }
+        }
+        return new LocalUserRepository(
+                LatencyDistribution.read(config, PREFIX + "latency", DEFAULT_LATENCY),
+                config.getOptionalValue(PREFIX + "error-rate", Double.class).orElse(0d),
+                config.getOptionalValue(PREFIX + "max-concurrency", Integer.class).orElse(0),
+                Duration.ofMillis(config.getOptionalValue(PREFIX + "acquire-timeout-millis", Long.class).orElse(1000L)),
+                users);
+    }
+
+    static Map<String, List<UserDTO>> readUsers(Path file) throws IOException {
+        Map<String, List<UserDTO>> users = new HashMap<>();
+        for(String line : Files.readAllLines(file, StandardCharsets.UTF_8)){
+            line = line.strip();
+            if(line.isEmpty() || line.startsWith("#")){
+                continue;
+            }
+            int comma = line.indexOf(',');
+            String userName = (comma < 0 ? line : line.substring(0, comma)).strip();
+            String surName = comma < 0 ? "" : line.substring(comma + 1).strip();
+            users.computeIfAbsent(userName, name -> new ArrayList<>()).add(new UserDTO(userName, surName.isEmpty() ? null : surName));
+        }
+        users.replaceAll((name, named) -> List.copyOf(named));
+        return users;
+    }
+
+    @Override
+    public Map<String, List<UserDTO>> findAllByName(Set<? extends String> userNames) {
+        return call(() -> {
+            Map<String, List<UserDTO>> found = new HashMap<>();
+            for(String userName : userNames){
+                found.put(userName, users == null
+                        ? List.of(new UserDTO(userName, null))
+                        : users.getOrDefault(userName, List.of()));
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public Map<UserNameKey, List<UserDTO>> findAllByNameAndSurname(Set<? extends UserNameKey> keys) {
+        return call(() -> {
+            Map<UserNameKey, List<UserDTO>> found = new HashMap<>();
+            for(UserNameKey key : keys){
+                found.put(key, users == null
+                        ? List.of(new UserDTO(key.getUserName(), key.getSurName()))
+                        : users.getOrDefault(key.getUserName(), List.of()).stream()
+                                .filter(user -> key.getSurName().equals(user.getSurName()))
+                                .collect(Collectors.toUnmodifiableList()));
+            }
+            return found;
+        });
+    }
+
+    private <T> T call(Supplier<T> lookup){
+        try{
+            if(permits != null && !permits.tryAcquire(acquireTimeout.toNanos(), TimeUnit.NANOSECONDS)){
+                throw new UncheckedIOException(new IOException("More than " + maxConcurrency + " concurrent calls"));
+            }
+            try{
+                latency.sleep();
+                if(errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate){
+                    throw new UncheckedIOException(new IOException("Simulated backend failure"));
+                }
+                return lookup.get();
+            }finally{
+                if(permits != null){
+                    permits.release();
+                }
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Interrupted while calling the backend"));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LocalUserRepository{errorRate=" + errorRate
+                + ", maxConcurrency=" + (permits == null ? "unlimited" : maxConcurrency)
+                + ", users=" + (users == null ? "any name" : users.size() + " names") + "}";
+    }
+}
@@ -0,0 +1,203 @@
+package me.beardedowl.caffeine.singleton.cache;
+
+import me.beardedowl.caffeine.common.InvalidationListener;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Second level behind CacheSingleton, kept in a direct ByteBuffer so it adds nothing for the GC to trace.
+ *
+ * Entries evicted from the on-heap cache because of its size bound are written here, and an on-heap miss looks here
+ * before calling the loader. Only the keys and a few numbers per entry stay on the heap.
+ *
+ * The buffer is used as a circular log : records are appended, and when the end is reached writing starts again from
+ * the beginning, dropping the oldest records it overwrites (FIFO). A record keeps the time its entry had left in the
+ * on-heap cache and expires when it runs out, so that moving between the two levels never extends the life of a value.
+ *
+ * Records are encoded with UserDTOCodec.
+ *
+ * Registered with the message cache on the InvalidationBus, so that an invalidated key does not come back from here.
+ *
+ * All methods are synchronized. The store is only reached on evictions and on misses, which already cost a load.
+ */
+public final class OffHeapUserStore<K> implements InvalidationListener<K> {
+
+    private static final class Slot<K> {
+        final K key;
+        final int offset;
+        final int length;
+        final long expiresAt;
+
+        Slot(K key, int offset, int length, long expiresAt) {
+            this.key = key;
+            this.offset = offset;
+            this.length = length;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Users taken back from the store, with the time they have left
+     */
+    public static final class Record {
+        private final List<UserDTO> users;
+        private final long remainingNanos;
+
+        Record(List<UserDTO> users, long remainingNanos) {
+            this.users = users;
+            this.remainingNanos = remainingNanos;
+        }
+
+        public List<UserDTO> getUsers() {
+            return users;
+        }
+
+        public long getRemainingNanos() {
+            return remainingNanos;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final Map<K, Slot<K>> index = new HashMap<>();
+    // Every record still present in the buffer in the order it was written, the head is the next one to be overwritten
+    private final ArrayDeque<Slot<K>> log = new ArrayDeque<>();
+    private int writePosition;
+    private long usedBytes;
+
+    /**
+     * @param capacityBytes     : Size of the direct buffer
+     */
+    public OffHeapUserStore(int capacityBytes) {
+        this.buffer = ByteBuffer.allocateDirect(capacityBytes);
+    }
+
+    /**
+     * @param remainingNanos    : Time the entry had left in the on-heap cache, the record can be read back until then
+     * @return  false when the users could not be stored (too big for the buffer or a name too long to encode)
+     */
+    public synchronized boolean put(K key, List<UserDTO> users, long remainingNanos) {
+        int length = encodedLength(users);
+        if(length < 0 || length > buffer.capacity()){
+            return false;
+        }
+        if(writePosition + length > buffer.capacity()){
+            // Whatever is left between writePosition and the end is the oldest data, drop it and wrap around
+            while(!log.isEmpty() && log.peekFirst().offset >= writePosition){
+                drop(log.pollFirst());
+            }
+            writePosition = 0;
+        }
+        while(!log.isEmpty() && log.peekFirst().offset >= writePosition && log.peekFirst().offset < writePosition + length){
+            drop(log.pollFirst());
+        }
+
+        encode(users, writePosition);
+        Slot<K> slot = new Slot<>(key, writePosition, length, System.nanoTime() + remainingNanos);
+        Slot<K> previous = index.put(key, slot);
+        if(previous != null){
+            usedBytes -= previous.length;
+        }
+        log.addLast(slot);
+        usedBytes += length;
+        writePosition += length;
+        return true;
+    }
+
+    /**
+     * Removes the entry and returns it. Used on an on-heap miss, the value goes back to the on-heap cache for the time
+     * it has left
+     * @return  Users stored for the key, null when absent or expired
+     */
+    public synchronized Record take(K key) {
+        Slot<K> slot = index.remove(key);
+        if(slot == null){
+            return null;
+        }
+        usedBytes -= slot.length;
+        long remainingNanos = slot.expiresAt - System.nanoTime();
+        if(remainingNanos <= 0){
+            return null;
+        }
+        return new Record(decode(slot.offset), remainingNanos);
+    }
+
+    @Override
+    public synchronized void invalidate(K key) {
+        Slot<K> slot = index.remove(key);
+        if(slot != null){
+            usedBytes -= slot.length;
+        }
+    }
+
+    @Override
+    public synchronized void invalidateIf(Predicate<? super K> matching) {
+        index.values().removeIf(slot -> {
+            if(!matching.test(slot.key)){
+                return false;
+            }
+            usedBytes -= slot.length;
+            return true;
+        });
+    }
+
+    /**
+     * Forgets every record, the buffer is written from the beginning again
+     */
+    @Override
+    public synchronized void invalidateAll() {
+        index.clear();
+        log.clear();
+        writePosition = 0;
+        usedBytes = 0;
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return  Bytes taken by the live records
+     */
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    public int capacityBytes() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Forgets a record which is being overwritten, unless the key has been written again (or removed) since
+     */
+    private void drop(Slot<K> slot) {
+        if(index.get(slot.key) == slot){
+            index.remove(slot.key);
+            usedBytes -= slot.length;
+        }
+    }
+
+    private static int encodedLength(List<UserDTO> users) {
+        try{
+            return UserDTOCodec.INSTANCE.sizeOf(users);
+        }catch (IllegalArgumentException e){
+            return -1;
+        }
+    }
+
+    private void encode(List<UserDTO> users, int offset) {
+        ByteBuffer target = buffer.duplicate();
+        target.position(offset);
+        UserDTOCodec.INSTANCE.write(target, users);
+    }
+
+    private List<UserDTO> decode(int offset) {
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset);
+        return UserDTOCodec.INSTANCE.read(source);
+    }
+}
@@ -1,21 +1,25 @@
 package me.beardedowl.caffeine.singleton.cache;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.json.Json;
 import jakarta.json.JsonObject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import me.beardedowl.caffeine.common.CacheDump;
+import me.beardedowl.caffeine.common.InvalidationBus;
 
-import java.time.Duration;
-import java.time.Instant;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -24,10 +28,14 @@ import java.util.Set;
 @ApplicationScoped
 public class SanchayController {
 
-    private static Logger LOGGER = LoggerFactory.getLogger(SanchayController.class.getName());
+    static final int MAX_BULK_NAMES = 1000;
 
     private Cache<String,List<UserDTO>> cache1 = CacheSingleton.getInstance().getMessageCache();
-    private Cache<String,List<UserDTO>> cache2 = CacheSingleton.getInstance().getMessageCache();
+    private AsyncCache<String,List<UserDTO>> asyncCache1 = CacheSingleton.getInstance().getAsyncMessageCache();
+    private AsyncCache<UserNameKey,List<UserDTO>> asyncCache2 = CacheSingleton.getInstance().getAsyncSurnameCache();
+
+    // Misses of concurrent requests are gathered and loaded together, with those of /sanchay/mt/safe (see UserLoaders)
+    private UserLoaders loaders = UserLoaders.getInstance();
 
     @GET
     public Response greet(){
@@ -38,27 +46,8 @@ public class SanchayController {
     @Path("/user/{name}")
     @Produces(MediaType.APPLICATION_JSON)
     public List<UserDTO> getUserDto(@PathParam("name") String userName){
-        Instant start = Instant.now();
-        String fName = "getUserDto";
-        try{
-            LOGGER.info("Cache 1 hashcode : {} ",cache1.hashCode());
-            return cache1.get(userName, (userNm) -> {
-                try{
-                    return loadingFunction1(userNm);
-                }
-                catch(InterruptedException i){
-                    i.printStackTrace();
-                }
-                catch (Exception e){
-                    throw e;
-                }
-                return null;
-            });
-        }
-        finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} completed in {} ms",fName,duration.toMillis());
-        }
+        // Loaded through the async view so that no loader thread waits for the batch to be sent
+        return asyncCache1.get(userName, (userNm, executor) -> loaders.loadByName(userNm)).join();
     }
 
     @GET
@@ -66,67 +55,79 @@ public class SanchayController {
     @Produces(MediaType.APPLICATION_JSON)
     public List<UserDTO> getUserDtoWithSurname(@PathParam("name") String userName,
                                          @PathParam("surName") String surName){
-        Instant start = Instant.now();
-        String fName = "getUserDto";
-        try{
-//            LOGGER.info("Cache 2 hashcode : {} ",cache2.hashCode());
-            String key = String.format("%s:%s",userName,surName);
-            List<UserDTO> result;
-            result = cache2.getIfPresent(key);
-            if(null == result ){
-                LOGGER.warn("Value with {} Not found in cache...",key);
-                result = loadingFunction2(key);
-                cache2.put(key,result);
-            }
-            return result;
-        }
-        finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} completed in {} ms",fName,duration.toMillis());
-        }
+        // Concurrent misses of the same key share one load, the way getUserDto does
+        return asyncCache2.get(UserNameKey.of(userName,surName), (key, executor) -> loaders.loadByNameAndSurname(key)).join();
     }
 
-
-    private List<UserDTO> loadingFunction1(String userName) throws InterruptedException {
-        LOGGER.info("Loading function 1");
-        LOGGER.warn("Value not found for key {} in cache....Loading",userName);
-        LOGGER.warn("Sleeping for {} ms",3000);
-        Thread.sleep(3000);
-        return List.of(new UserDTO(userName, null));
+    /**
+     * Forgets a user, with every surname looked up for it, on this instance and on the other ones (see InvalidationBus)
+     * curl -X DELETE http://localhost:8081/sanchay/user/Joe
+     */
+    @DELETE
+    @Path("/user/{name}")
+    public Response invalidateUser(@PathParam("name") String userName){
+        InvalidationBus bus = InvalidationBus.getInstance();
+        bus.invalidate(CacheSingleton.CACHE_NAME, userName);
+        // The surname cache is grouped by user name, a prefix would also match the names starting with userName
+        bus.invalidateGroup(CacheSingleton.SURNAME_CACHE_NAME, userName);
+        // The near-caches of /sanchay/mt/safe only exist when sharding is on
+        if(bus.names().contains(SanchayMTSafeService.NEAR_CACHE_NAME)){
+            bus.invalidate(SanchayMTSafeService.NEAR_CACHE_NAME, userName);
+            bus.invalidateGroup(SanchayMTSafeService.NEAR_SURNAME_CACHE_NAME, userName);
+        }
+        return Response.status(Response.Status.NO_CONTENT).build();
     }
 
-    private List<UserDTO> loadingFunction2(String userNameAndSurname) {
-        LOGGER.info("Thread = {} Loading function 2",Thread.currentThread().getName());
-        String[] arr = userNameAndSurname.split(":");
-        LOGGER.warn("Value not found for key {} in cache....Loading",userNameAndSurname);
-        LOGGER.warn("Sleeping for {} ms",3000);
-        try{
-            Thread.sleep(3000);
-            return List.of(new UserDTO(arr[0],arr[1]));
-        } catch(Exception e){
-            e.printStackTrace();
+    /**
+     * Looks up several users at once. Hits are served by the cache and all the misses are loaded together by
+     * UserLoaders.loadAllByName(), so N misses cost one round trip instead of N
+     * curl -X POST -H "Content-Type: application/json" -d '["Joe","Jane"]' http://localhost:8081/sanchay/users
+     * @param userNames : Names to look up, duplicates are ignored
+     * @return  Users per name, in the order of the request. 400 when no name or more than MAX_BULK_NAMES are given
+     */
+    @POST
+    @Path("/users")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getUserDtos(List<String> userNames){
+        if(userNames == null || userNames.isEmpty() || userNames.size() > MAX_BULK_NAMES){
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(String.format("Between 1 and %d names are expected",MAX_BULK_NAMES))
+                    .build();
         }
-        return null;
+        Set<String> keys = new LinkedHashSet<>(userNames);
+        keys.remove(null);
+        Map<String, List<UserDTO>> users = cache1.getAll(keys, loaders::loadAllByName);
+        return Response.status(Response.Status.OK).entity(users).build();
     }
 
     /**
-     * Converts the cache into a string and returns it to user
+     * Streams one page of the cache as newline delimited JSON (see CacheDump)
      * Note that this does not refresh the cache BUT it removes the entries which have been marked as expired
-     * Also, I believe that both the key and value objects should have toString() overridden
-     * @return  Cache data in a key-value pair
+     * @param prefix    : Only keys starting with this prefix are returned
+     * @param cursor    : X-Next-Cursor header of the previous page
+     * @param limit     : Maximum number of entries in the page
+     * @return  Cache data in key-value pairs, one per line
      */
     @GET
     @Path("/cache/message/data")
-    @Produces(MediaType.APPLICATION_JSON)
-    public Set<Map.Entry<String, List<UserDTO>>> getMessageCacheData(){
-        Instant start = Instant.now();
-        String fName = "getMessageCacheData";
-        try{
-            return CacheSingleton.getInstance().getMessageCache().asMap().entrySet();
-        } finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} operation completed in {} ms", fName,duration.toMillis());
-        }
+    @Produces(CacheDump.NDJSON)
+    public Response getMessageCacheData(@QueryParam("prefix") String prefix,
+                                        @QueryParam("cursor") String cursor,
+                                        @QueryParam("limit") Integer limit){
+        return CacheDump.page(CacheSingleton.getInstance().getMessageCache(), prefix, cursor, limit);
+    }
+
+    /**
+     * Same as getMessageCacheData for the name + surname lookups, keys are shown as name:surname
+     */
+    @GET
+    @Path("/cache/message-surname/data")
+    @Produces(CacheDump.NDJSON)
+    public Response getSurnameCacheData(@QueryParam("prefix") String prefix,
+                                        @QueryParam("cursor") String cursor,
+                                        @QueryParam("limit") Integer limit){
+        return CacheDump.page(CacheSingleton.getInstance().getSurnameCache(), prefix, cursor, limit);
     }
 
     /**
@@ -138,20 +139,18 @@ public class SanchayController {
     @Path("/cache/message/stats")
     @Produces(MediaType.APPLICATION_JSON)
     public JsonObject getMessageCacheStats(){
-        Instant start = Instant.now();
-        String fName = "getMessageCacheStats";
-        try{
-            return Json.createObjectBuilder()
-                    .add("cacheHashcode",CacheSingleton.getInstance().getMessageCache().hashCode())
-                    .add("evictionCount",CacheSingleton.getInstance().getMessageCache().stats().evictionCount())
-                    .add("averageLoadPenalty",CacheSingleton.getInstance().getMessageCache().stats().averageLoadPenalty())
-                    .add("hitCount",CacheSingleton.getInstance().getMessageCache().stats().hitCount())
-                    .add("hitRate",CacheSingleton.getInstance().getMessageCache().stats().hitRate())
-                    .build();
-        } finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} operation completed in {} ms", fName,duration.toMillis());
-        }
+        // A single snapshot, the same numbers are exported continuously under /metrics (cache=message)
+        Cache<String, List<UserDTO>> cache = CacheSingleton.getInstance().getMessageCache();
+        CacheStats stats = cache.stats();
+        return Json.createObjectBuilder()
+                .add("cacheHashcode",cache.hashCode())
+                .add("evictionCount",stats.evictionCount())
+                .add("averageLoadPenalty",stats.averageLoadPenalty())
+                .add("hitCount",stats.hitCount())
+                .add("hitRate",stats.hitRate())
+                .add("loaderInvocations",loaders.batchCount())
+                .add("loadedKeys",loaders.keyCount())
+                .build();
     }
 
 }
@@ -5,6 +5,7 @@
 package me.beardedowl.caffeine.singleton.cache;
 
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.json.Json;
@@ -13,16 +14,15 @@ import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import me.beardedowl.caffeine.common.CacheDump;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.Duration;
-import java.time.Instant;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CompletionStage;
 
 @Path("/sanchay/mt/safe/")
 @ApplicationScoped
@@ -43,51 +43,52 @@ public class SanchayMTSafeController {
     @Path("/user/{name}")
     @Produces(MediaType.APPLICATION_JSON)
     public List<UserDTO> getUserDto(@PathParam("name") String userName){
-        Instant start = Instant.now();
-        String fName = "getUserDto";
-        try{
-            return service.getCachedDataFromLf1(userName);
-        }
-        finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} completed in {} ms",fName,duration.toMillis());
-        }
+        return service.getCachedDataFromLf1(userName);
     }
 
     @GET
     @Path("/user/{name}/surname/{surName}")
     @Produces(MediaType.APPLICATION_JSON)
-    public List<UserDTO> getUserDtoWithSurname(@PathParam("name") String userName,
-                                               @PathParam("surName") String surName){
-        Instant start = Instant.now();
-        String fName = "getUserDto";
-        try{
-            return service.loadingFunction2(userName, surName);
-        }
-        finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} completed in {} ms",fName,duration.toMillis());
-        }
+    public CompletionStage<List<UserDTO>> getUserDtoWithSurname(@PathParam("name") String userName,
+                                                                @PathParam("surName") String surName){
+        // Returning the future lets Jersey suspend the request instead of parking the worker thread for the load
+        return service.getCachedDataFromLf2(userName, surName);
     }
 
     /**
-     * Converts the cache into a string and returns it to user
+     * Owner side of the sharding (see ShardRouter) : the user as known by this instance, never forwarded to another one.
+     * The body is the binary form of the value (UserDTOCodec)
+     */
+    @GET
+    @Path("/shard/user/{name}")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public CompletionStage<byte[]> getOwnedUserDto(@PathParam("name") String userName){
+        return service.getOwnedDataFromLf1(userName).thenApply(UserDTOCodec.INSTANCE::toBytes);
+    }
+
+    @GET
+    @Path("/shard/user/{name}/surname/{surName}")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public CompletionStage<byte[]> getOwnedUserDtoWithSurname(@PathParam("name") String userName,
+                                                             @PathParam("surName") String surName){
+        return service.getOwnedDataFromLf2(UserNameKey.of(userName, surName)).thenApply(UserDTOCodec.INSTANCE::toBytes);
+    }
+
+    /**
+     * Streams one page of the cache as newline delimited JSON (see CacheDump)
      * Note that this does not refresh the cache BUT it removes the entries which have been marked as expired
-     * Also, I believe that both the key and value objects should have toString() overridden
-     * @return  Cache data in a key-value pair
+     * @param prefix    : Only keys starting with this prefix are returned
+     * @param cursor    : X-Next-Cursor header of the previous page
+     * @param limit     : Maximum number of entries in the page
+     * @return  Cache data in key-value pairs, one per line
      */
     @GET
     @Path("/cache/message/data")
-    @Produces(MediaType.APPLICATION_JSON)
-    public Set<Map.Entry<String, List<UserDTO>>> getMessageCacheData(){
-        Instant start = Instant.now();
-        String fName = "getMessageCacheData";
-        try{
-            return CacheSingleton.getInstance().getMessageCache().asMap().entrySet();
-        } finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} operation completed in {} ms", fName,duration.toMillis());
-        }
+    @Produces(CacheDump.NDJSON)
+    public Response getMessageCacheData(@QueryParam("prefix") String prefix,
+                                        @QueryParam("cursor") String cursor,
+                                        @QueryParam("limit") Integer limit){
+        return CacheDump.page(CacheSingleton.getInstance().getMessageCache(), prefix, cursor, limit);
     }
 
     /**
@@ -99,20 +100,16 @@ public class SanchayMTSafeController {
     @Path("/cache/message/stats")
     @Produces(MediaType.APPLICATION_JSON)
     public JsonObject getMessageCacheStats(){
-        Instant start = Instant.now();
-        String fName = "getMessageCacheStats";
-        try{
-            return Json.createObjectBuilder()
-                    .add("cacheHashcode",CacheSingleton.getInstance().getMessageCache().hashCode())
-                    .add("evictionCount",CacheSingleton.getInstance().getMessageCache().stats().evictionCount())
-                    .add("averageLoadPenalty",CacheSingleton.getInstance().getMessageCache().stats().averageLoadPenalty())
-                    .add("hitCount",CacheSingleton.getInstance().getMessageCache().stats().hitCount())
-                    .add("hitRate",CacheSingleton.getInstance().getMessageCache().stats().hitRate())
-                    .build();
-        } finally {
-            Duration duration = Duration.between(start,Instant.now());
-            LOGGER.info("{} operation completed in {} ms", fName,duration.toMillis());
-        }
+        // A single snapshot, the same numbers are exported continuously under /metrics (cache=message)
+        Cache<String, List<UserDTO>> cache = CacheSingleton.getInstance().getMessageCache();
+        CacheStats stats = cache.stats();
+        return Json.createObjectBuilder()
+                .add("cacheHashcode",cache.hashCode())
+                .add("evictionCount",stats.evictionCount())
+                .add("averageLoadPenalty",stats.averageLoadPenalty())
+                .add("hitCount",stats.hitCount())
+                .add("hitRate",stats.hitRate())
+                .build();
     }
 
 }
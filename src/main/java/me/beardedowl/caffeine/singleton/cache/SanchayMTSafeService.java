@@ -1,64 +1,167 @@
 package me.beardedowl.caffeine.singleton.cache;
 
-import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import me.beardedowl.caffeine.common.CacheRegistry;
+import me.beardedowl.caffeine.common.CacheSettings;
+import me.beardedowl.caffeine.common.CacheWarmer;
+import me.beardedowl.caffeine.common.InvalidationBus;
+import me.beardedowl.caffeine.common.RemovalLogger;
+import me.beardedowl.caffeine.common.ShardRouter;
+import me.beardedowl.caffeine.common.SnapshotCodec;
+import me.beardedowl.caffeine.common.WriteExpiry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
+/**
+ * Lookups of /sanchay/mt/safe, loaded in batches into the caches of CacheSingleton.
+ *
+ * With sharding on (see ShardRouter) a key is only loaded and kept by the instance owning it. Other instances ask the
+ * owner through /sanchay/mt/safe/shard/... (the getOwned... methods, which never forward) and keep its answer in a
+ * near-cache, app.cache.message-near.* and app.cache.message-surname-near.* (10 s by default). When the owner does not
+ * answer, the key is loaded here as if sharding was off. The near-caches are on the InvalidationBus, so that a user
+ * deleted on one instance is not served by the others until its near entry expires.
+ *
+ * The names of the message cache are preloaded while the container starts (see CacheWarmer), through the near-cache
+ * for the names owned by another instance. The warm-up only starts the loads, it does not wait for the batches on the
+ * LoaderExecutor threads they are loaded on.
+ */
 @ApplicationScoped
 public class SanchayMTSafeService {
     private static Logger LOGGER = LoggerFactory.getLogger(SanchayController.class.getName());
 
-    private Cache<String, List<UserDTO>> cache1 = CacheSingleton.getInstance().getMessageCache();
-    private Cache<String,List<UserDTO>> cache2 = CacheSingleton.getInstance().getMessageCache();
+    private AsyncCache<String,List<UserDTO>> cache2 = CacheSingleton.getInstance().getAsyncMessageCache();
+    private AsyncCache<UserNameKey,List<UserDTO>> surnameCache = CacheSingleton.getInstance().getAsyncSurnameCache();
+
+    // Misses of concurrent requests are gathered and loaded together, with those of /sanchay (see UserLoaders)
+    private UserLoaders loaders = UserLoaders.getInstance();
+
+    static final String NEAR_CACHE_NAME = "message-near";
+    static final String NEAR_SURNAME_CACHE_NAME = "message-surname-near";
+    static final Duration DEFAULT_NEAR_EXPIRE_AFTER_WRITE = Duration.ofSeconds(10);
+    static final String SHARD_PATH = "/sanchay/mt/safe/shard/user/";
+
+    private final ShardRouter router = ShardRouter.getInstance();
+
+    // Values of the keys owned by other instances, null when sharding is disabled
+    private AsyncCache<String,List<UserDTO>> nearCache;
+    private AsyncCache<UserNameKey,List<UserDTO>> nearSurnameCache;
 
     public SanchayMTSafeService() {
     }
 
-    public List<UserDTO> getCachedDataFromLf1(String userName){
-        // the get() method is a blocking function
-        // In case multiple threads are trying to use this, it will only allow one thread to use it
-        // Doesn't need to use synchronized keyword
-        return cache1.get(userName, (userNm) -> {
-            try{
-                return loadingFunction1(userNm);
-            }
-            catch(InterruptedException i){
-                i.printStackTrace();
-            }
-            catch (Exception e){
-                throw e;
-            }
-            return null;
-        });
+    @PostConstruct
+    void bindCaches(){
+        buildNearCaches();
+        CacheWarmer.getInstance().registerAsync(CacheSingleton.CACHE_NAME, CacheSingleton.getInstance().getMessageCache(),
+                this::getCachedDataFromLf1Async);
+    }
+
+    /**
+     * Creates the bean, hence starts preloading the message cache, while the container starts and before the server
+     * takes traffic
+     */
+    void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event){
+        LOGGER.info("Sanchay MT safe service ready");
+    }
+
+    private void buildNearCaches(){
+        if(!router.isEnabled()){
+            return;
+        }
+        CacheRegistry registry = CacheRegistry.getInstance();
+        CacheSettings settings = registry.settings(NEAR_CACHE_NAME);
+        WriteExpiry<String,List<UserDTO>> expiry = settings.newExpiry(DEFAULT_NEAR_EXPIRE_AFTER_WRITE);
+        nearCache = registry.register(NEAR_CACHE_NAME, settings.newBuilder(NEAR_CACHE_NAME, expiry, null)
+                .removalListener(RemovalLogger.<String,List<UserDTO>>of(NEAR_CACHE_NAME))
+                .buildAsync(), expiry);
+        InvalidationBus.getInstance().register(NEAR_CACHE_NAME, nearCache.synchronous(), SnapshotCodec.STRING);
+
+        CacheSettings surnameSettings = registry.settings(NEAR_SURNAME_CACHE_NAME);
+        WriteExpiry<UserNameKey,List<UserDTO>> surnameExpiry = surnameSettings.newExpiry(DEFAULT_NEAR_EXPIRE_AFTER_WRITE);
+        nearSurnameCache = registry.register(NEAR_SURNAME_CACHE_NAME, surnameSettings.newBuilder(NEAR_SURNAME_CACHE_NAME, surnameExpiry, null)
+                .removalListener(RemovalLogger.<UserNameKey,List<UserDTO>>of(NEAR_SURNAME_CACHE_NAME))
+                .buildAsync(), surnameExpiry);
+        InvalidationBus.getInstance().register(NEAR_SURNAME_CACHE_NAME, nearSurnameCache.synchronous(), UserNameKeyCodec.INSTANCE,
+                UserNameKey::getUserName);
     }
 
-    private List<UserDTO> loadingFunction1(String userName) throws InterruptedException {
-        LOGGER.info("Loading function 1");
-        LOGGER.warn("Value not found for key {} in cache....Loading",userName);
-        LOGGER.warn("Sleeping for {} ms",3000);
-        Thread.sleep(3000);
-        return List.of(new UserDTO(userName, null));
+    public List<UserDTO> getCachedDataFromLf1(String userName){
+        return getCachedDataFromLf1Async(userName).join();
     }
 
-    public synchronized List<UserDTO> loadingFunction2(String userName, String surName) {
-        String key = String.format("%s:%s",userName,surName);
-        List<UserDTO> result = cache2.getIfPresent(key);
-        if(result != null){
-            return result;
+    private CompletableFuture<List<UserDTO>> getCachedDataFromLf1Async(String userName){
+        Optional<String> owner = router.remoteOwnerOf(userName);
+        if(owner.isPresent()){
+            return fromOwner(nearCache, userName, owner.get(), SHARD_PATH + ShardRouter.pathSegment(userName),
+                    () -> getOwnedDataFromLf1(userName));
         }
-        LOGGER.info("Thread = {} Loading function 2",Thread.currentThread().getName());
-        LOGGER.warn("Value not found for key {} in cache....Loading",key);
-        LOGGER.warn("Sleeping for {} ms",3000);
-        try{
-            Thread.sleep(3000);
-            result = List.of(new UserDTO(userName,surName));
-            cache2.put(key,result);
-        } catch(Exception e){
-            e.printStackTrace();
+        return getOwnedDataFromLf1(userName);
+    }
+
+    /**
+     * Serves the name from this instance, whoever owns it
+     */
+    public CompletableFuture<List<UserDTO>> getOwnedDataFromLf1(String userName){
+        // The AsyncCache keeps one in-flight future per key, so in case multiple threads are asking for the same user
+        // only one load happens. Doesn't need to use synchronized keyword
+        // Only the callers joining the future wait, no loader thread waits for the batch to be sent
+        return cache2.get(userName, (userNm, executor) -> loaders.loadByName(userNm));
+    }
+
+    /**
+     * Looks the key up in the near-cache, asking its owner on a miss. Callers asking for the same key share one request
+     * @param local : Loads the key here when the owner fails
+     */
+    private <K> CompletableFuture<List<UserDTO>> fromOwner(AsyncCache<K,List<UserDTO>> near, K key, String owner,
+                                                          String path, Supplier<CompletableFuture<List<UserDTO>>> local){
+        return near.get(key, (k, executor) -> router.fetch(owner, path, UserDTOCodec.INSTANCE)
+                .exceptionallyCompose(e -> {
+                    LOGGER.warn("Owner {} did not answer for {}, loading it here : {}",owner,key,e.toString());
+                    router.recordFallback();
+                    return local.get();
+                }));
+    }
+
+    /**
+     * Non-blocking counterpart of getCachedDataFromLf1 for the name:surname lookups.
+     * The AsyncCache keeps one in-flight future per key, so callers asking for the same key share a single load
+     * while misses on different keys are gathered into batches and loaded on the cache executor.
+     * @param userName  : Name of the user
+     * @param surName   : Surname of the user
+     * @return  Future which completes with the cached (or freshly loaded) value
+     */
+    public CompletableFuture<List<UserDTO>> getCachedDataFromLf2(String userName, String surName){
+        UserNameKey key = UserNameKey.of(userName, surName);
+        Optional<String> owner = router.remoteOwnerOf(key.toString());
+        if(owner.isPresent()){
+            return fromOwner(nearSurnameCache, key, owner.get(), SHARD_PATH + ShardRouter.pathSegment(userName) + "/surname/" + ShardRouter.pathSegment(surName),
+                    () -> getOwnedDataFromLf2(key));
         }
-        return result;
+        return getOwnedDataFromLf2(key);
+    }
+
+    /**
+     * Serves the name + surname from this instance, whoever owns it
+     */
+    public CompletableFuture<List<UserDTO>> getOwnedDataFromLf2(UserNameKey key){
+        return surnameCache.get(key, (k, executor) -> loaders.loadByNameAndSurname(k));
+    }
+
+    /**
+     * @return  Number of calls made to the loaders, each of them loads a whole batch. The loaders are shared with
+     * SanchayController, its calls are counted as well
+     */
+    public long getLoaderInvocations(){
+        return loaders.batchCount();
     }
 }
@@ -1,18 +1,40 @@
 package me.beardedowl.caffeine.singleton.cache;
 
-public class UserDTO {
+import com.github.benmanes.caffeine.cache.Interner;
+import me.beardedowl.caffeine.common.IdGenerator;
 
-    public static int count = 0;
-    String userName;
+import java.util.Objects;
 
-    String surName;
-    int id;
+/**
+ * A user as cached by CacheSingleton. Immutable, so that a value can be shared by every request reading it and by the
+ * off-heap second level without being copied. Values are cached as List.of(user), which for one or two users is a
+ * fixed size list with no backing array.
+ *
+ * Surnames are interned : users loaded separately with the same surname keep a single String. The interner holds
+ * them weakly, a surname no cached user refers to anymore is collected.
+ */
+public final class UserDTO {
+
+    // Users are created by the loaders on many threads at once (see IdGenerator)
+    private static final IdGenerator IDS = new IdGenerator();
+    private static final Interner<String> SURNAMES = Interner.newWeakInterner();
+
+    private final String userName;
+
+    private final String surName;
+    private final long id;
 
     public UserDTO(String userName, String surName) {
+        this(IDS.nextId(), userName, surName);
+    }
+
+    /**
+     * Rebuilds a user which already has an id, for example when it is read back from OffHeapUserStore
+     */
+    UserDTO(long id, String userName, String surName) {
         this.userName = userName;
-        this.surName = surName;
-        this.id = UserDTO.count;
-        UserDTO.count += 1;
+        this.surName = surName == null ? null : SURNAMES.intern(surName);
+        this.id = id;
     }
     public String getUserName() {
         return userName;
@@ -22,19 +44,29 @@ public class UserDTO {
         return surName;
     }
 
-    public void setSurName(String surName) {
-        this.surName = surName;
+    public long getId() {
+        return id;
     }
 
-    public void setUserName(String userName) {
-        this.userName = userName;
+    @Override
+    public boolean equals(Object o) {
+        if(this == o){
+            return true;
+        }
+        if(!(o instanceof UserDTO)){
+            return false;
+        }
+        UserDTO other = (UserDTO) o;
+        return id == other.id && Objects.equals(userName, other.userName) && Objects.equals(surName, other.surName);
     }
 
-    public int getId() {
-        return id;
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, userName, surName);
     }
 
-    public void setId(int id) {
-        this.id = id;
+    @Override
+    public String toString() {
+        return "UserDTO{id=" + id + ", userName='" + userName + "', surName='" + surName + "'}";
     }
 }
@@ -0,0 +1,58 @@
+package me.beardedowl.caffeine.singleton.cache;
+
+import me.beardedowl.caffeine.common.SnapshotCodec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary form of the values of CacheSingleton, shared by OffHeapUserStore and the cache snapshots
+ *  short   number of users
+ *  per user
+ *      long    id
+ *      string  userName
+ *      string  surName
+ */
+public final class UserDTOCodec implements SnapshotCodec<List<UserDTO>> {
+
+    public static final UserDTOCodec INSTANCE = new UserDTOCodec();
+
+    private UserDTOCodec(){
+    }
+
+    @Override
+    public int sizeOf(List<UserDTO> users) {
+        if(users.size() > Short.MAX_VALUE){
+            throw new IllegalArgumentException(users.size() + " users are too many to be encoded");
+        }
+        int size = Short.BYTES;
+        for(UserDTO user : users){
+            size += Long.BYTES + SnapshotCodec.sizeOfString(user.getUserName()) + SnapshotCodec.sizeOfString(user.getSurName());
+        }
+        return size;
+    }
+
+    @Override
+    public void write(ByteBuffer target, List<UserDTO> users) {
+        target.putShort((short) users.size());
+        for(UserDTO user : users){
+            target.putLong(user.getId());
+            SnapshotCodec.putString(target, user.getUserName());
+            SnapshotCodec.putString(target, user.getSurName());
+        }
+    }
+
+    @Override
+    public List<UserDTO> read(ByteBuffer source) {
+        int count = source.getShort();
+        List<UserDTO> users = new ArrayList<>(count);
+        for(int i = 0; i < count; i++){
+            long id = source.getLong();
+            String userName = SnapshotCodec.getString(source);
+            String surName = SnapshotCodec.getString(source);
+            users.add(new UserDTO(id, userName, surName));
+        }
+        return List.copyOf(users);
+    }
+}
@@ -0,0 +1,75 @@
+package me.beardedowl.caffeine.singleton.cache;
+
+import com.github.benmanes.caffeine.cache.Weigher;
+
+import java.util.List;
+
+/**
+ * Estimates how many bytes an entry of CacheSingleton keeps alive, so the cache can be bounded with maximumWeight.
+ * The numbers assume a 64 bit JVM with compressed oops and compact strings. It is an estimate, not a measurement,
+ * but it grows with the data the way the real footprint does (long names weigh more than short ones).
+ * Surnames are interned by UserDTO, a surname shared by several entries is counted in each of them.
+ */
+public final class UserDTOWeigher implements Weigher<Object, List<UserDTO>> {
+
+    static final int OBJECT_HEADER = 12;
+    static final int ARRAY_HEADER = 16;
+    static final int REFERENCE = 4;
+
+    /** Caffeine node, the CompletableFuture around the value (the cache is async) and the hash table slot */
+    static final int ENTRY_OVERHEAD = 80;
+
+    /** List.of(a) / List.of(a, b) are small fixed classes, longer lists are backed by an array */
+    static final int SMALL_LIST = align(OBJECT_HEADER + 2 * REFERENCE);
+
+    /** userName, surName and hash */
+    static final int USER_NAME_KEY = align(OBJECT_HEADER + 2 * REFERENCE + 4);
+
+    /** userName, surName and id */
+    static final int USER_DTO = align(OBJECT_HEADER + 2 * REFERENCE + 8);
+
+    @Override
+    public int weigh(Object key, List<UserDTO> value) {
+        long weight = ENTRY_OVERHEAD + sizeOfKey(key);
+        if(value != null){
+            weight += value.size() <= 2 ? SMALL_LIST : align(OBJECT_HEADER + REFERENCE) + align(ARRAY_HEADER + value.size() * REFERENCE);
+            for(UserDTO user : value){
+                weight += USER_DTO + sizeOf(user.getUserName()) + sizeOf(user.getSurName());
+            }
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return  Size of a key of the message cache (String) or of the surname cache (UserNameKey)
+     */
+    static long sizeOfKey(Object key){
+        if(key instanceof UserNameKey){
+            UserNameKey nameKey = (UserNameKey) key;
+            return USER_NAME_KEY + sizeOf(nameKey.getUserName()) + sizeOf(nameKey.getSurName());
+        }
+        return sizeOf(String.valueOf(key));
+    }
+
+    /**
+     * @return  Size of the String object and its byte[] (1 byte per char when every char is latin1, 2 otherwise)
+     */
+    static long sizeOf(String value){
+        if(value == null){
+            return 0;
+        }
+        int bytesPerChar = 1;
+        for(int i = 0; i < value.length(); i++){
+            if(value.charAt(i) > 0xFF){
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        // header + byte[] reference + hash + coder + hashIsZero
+        return align(OBJECT_HEADER + REFERENCE + 4 + 1 + 1) + align(ARRAY_HEADER + (long) value.length() * bytesPerChar);
+    }
+
+    private static int align(long size){
+        return (int) ((size + 7) & ~7L);
+    }
+}
@@ -0,0 +1,101 @@
+package me.beardedowl.caffeine.singleton.cache;
+
+import me.beardedowl.caffeine.common.MicroBatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Loaders of the caches of CacheSingleton, shared by SanchayController and SanchayMTSafeService : both endpoints fill
+ * the same caches, so their misses are gathered into the same batches (see MicroBatcher).
+ *
+ * Every key of a batch gets a value, the UserRepository maps a key without users to an empty list.
+ *
+ * The batchers are named after the cache they load, the metrics of MicroBatcher are tagged with loader=message and
+ * loader=message-surname.
+ */
+final class UserLoaders {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(UserLoaders.class.getName());
+
+    private static UserLoaders userLoaders = new UserLoaders(UserRepository.getInstance());
+
+    private final UserRepository repository;
+
+    // Names missing from the second level as well are loaded from the UserRepository
+    private final Function<Set<? extends String>, Map<String, List<UserDTO>>> loadAllByName;
+
+    private final MicroBatcher<String,List<UserDTO>> batcher1;
+    private final MicroBatcher<UserNameKey,List<UserDTO>> batcher2;
+
+    private UserLoaders(UserRepository repository){
+        this.repository = repository;
+        this.loadAllByName = CacheSingleton.getInstance().withSecondLevelAll(this::loadAllFunction1);
+        this.batcher1 = MicroBatcher.create(CacheSingleton.CACHE_NAME, loadAllByName);
+        this.batcher2 = MicroBatcher.<UserNameKey,List<UserDTO>>create(CacheSingleton.SURNAME_CACHE_NAME, this::loadAllFunction2);
+    }
+
+    static UserLoaders getInstance(){
+        return userLoaders;
+    }
+
+    /**
+     * Loader of the message cache, asyncCache.get(key, (k, executor) -> loaders.loadByName(k))
+     * @return  Future completed once the batch holding the name has been loaded
+     */
+    CompletableFuture<List<UserDTO>> loadByName(String userName){
+        return batcher1.load(userName);
+    }
+
+    /**
+     * Loader of the surname cache, asyncCache.get(key, (k, executor) -> loaders.loadByNameAndSurname(k))
+     * @return  Future completed once the batch holding the key has been loaded
+     */
+    CompletableFuture<List<UserDTO>> loadByNameAndSurname(UserNameKey key){
+        return batcher2.load(key);
+    }
+
+    /**
+     * Bulk loader of the message cache for Cache.getAll(), the names are loaded right away rather than batched
+     */
+    Map<String, List<UserDTO>> loadAllByName(Set<? extends String> userNames){
+        return loadAllByName.apply(userNames);
+    }
+
+    /**
+     * @return  Number of calls made to the loaders, each of them loads a whole batch
+     */
+    long batchCount(){
+        return batcher1.batchCount() + batcher2.batchCount();
+    }
+
+    /**
+     * @return  Number of keys loaded through those calls
+     */
+    long keyCount(){
+        return batcher1.keyCount() + batcher2.keyCount();
+    }
+
+    /**
+     * Loads all the names missing from the cache in one call to the UserRepository
+     */
+    private Map<String, List<UserDTO>> loadAllFunction1(Set<? extends String> userNames) {
+        LOGGER.info("Loading function 1 for {} keys",userNames.size());
+        LOGGER.warn("Values not found for keys {} in cache....Loading",userNames);
+        return repository.findAllByName(userNames);
+    }
+
+    /**
+     * Loads all the name + surname keys missing from the cache in one call to the UserRepository
+     */
+    private Map<UserNameKey, List<UserDTO>> loadAllFunction2(Set<? extends UserNameKey> userNamesAndSurnames) {
+        LOGGER.info("Thread = {} Loading function 2 for {} keys",Thread.currentThread().getName(),userNamesAndSurnames.size());
+        LOGGER.warn("Values not found for keys {} in cache....Loading",userNamesAndSurnames);
+        return repository.findAllByNameAndSurname(userNamesAndSurnames);
+    }
+}
@@ -0,0 +1,57 @@
+package me.beardedowl.caffeine.singleton.cache;
+
+import java.util.Objects;
+
+/**
+ * Key of the name + surname lookups, replacing the "name:surname" Strings built with String.format() and split()
+ * back in the loaders. Both parts are kept as they are, so a name containing ':' no longer changes the meaning of
+ * the key, and the hash is computed once when the key is built instead of on the first lookup of every new String.
+ *
+ * toString() still gives "name:surname", for the logs and the cache dump.
+ */
+public final class UserNameKey {
+
+    private final String userName;
+    private final String surName;
+    private final int hash;
+
+    private UserNameKey(String userName, String surName) {
+        this.userName = Objects.requireNonNull(userName, "userName");
+        this.surName = Objects.requireNonNull(surName, "surName");
+        this.hash = 31 * userName.hashCode() + surName.hashCode();
+    }
+
+    public static UserNameKey of(String userName, String surName) {
+        return new UserNameKey(userName, surName);
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public String getSurName() {
+        return surName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o){
+            return true;
+        }
+        if(!(o instanceof UserNameKey)){
+            return false;
+        }
+        UserNameKey other = (UserNameKey) o;
+        return hash == other.hash && userName.equals(other.userName) && surName.equals(other.surName);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return userName + ":" + surName;
+    }
+}
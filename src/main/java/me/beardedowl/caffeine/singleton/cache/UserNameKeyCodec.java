@@ -0,0 +1,34 @@
+package me.beardedowl.caffeine.singleton.cache;
+
+import me.beardedowl.caffeine.common.SnapshotCodec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary form of the keys of the surname cache of CacheSingleton, for its snapshots
+ *  string  userName
+ *  string  surName
+ */
+final class UserNameKeyCodec implements SnapshotCodec<UserNameKey> {
+
+    static final UserNameKeyCodec INSTANCE = new UserNameKeyCodec();
+
+    private UserNameKeyCodec(){
+    }
+
+    @Override
+    public int sizeOf(UserNameKey key) {
+        return SnapshotCodec.sizeOfString(key.getUserName()) + SnapshotCodec.sizeOfString(key.getSurName());
+    }
+
+    @Override
+    public void write(ByteBuffer target, UserNameKey key) {
+        SnapshotCodec.putString(target, key.getUserName());
+        SnapshotCodec.putString(target, key.getSurName());
+    }
+
+    @Override
+    public UserNameKey read(ByteBuffer source) {
+        return UserNameKey.of(SnapshotCodec.getString(source), SnapshotCodec.getString(source));
+    }
+}
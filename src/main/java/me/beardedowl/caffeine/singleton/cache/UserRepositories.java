@@ -0,0 +1,27 @@
+package me.beardedowl.caffeine.singleton.cache;
+
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ServiceLoader;
+
+/**
+ * Holds the UserRepository of the application, looked up once
+ */
+final class UserRepositories {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(UserRepositories.class.getName());
+
+    static final UserRepository INSTANCE = load();
+
+    private UserRepositories(){
+    }
+
+    private static UserRepository load(){
+        UserRepository repository = ServiceLoader.load(UserRepository.class).findFirst()
+                .orElseGet(() -> LocalUserRepository.create(ConfigProvider.getConfig()));
+        LOGGER.info("Users are loaded from {}",repository);
+        return repository;
+    }
+}
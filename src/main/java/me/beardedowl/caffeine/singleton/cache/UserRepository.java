@@ -0,0 +1,39 @@
+package me.beardedowl.caffeine.singleton.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Where the loaders of the caches get their users from. Bulk lookups are one call to the backend, so that a batch of
+ * misses (see MicroBatcher) costs one round trip.
+ *
+ * The implementation is found with ServiceLoader (META-INF/services/me.beardedowl.caffeine.singleton.cache.UserRepository),
+ * LocalUserRepository is used when there is none.
+ *
+ * Failures of the backend are thrown as UncheckedIOException, which the caches treat as a failed load.
+ */
+public interface UserRepository {
+
+    /**
+     * @return  Users per name, a name without users maps to an empty list
+     */
+    Map<String, List<UserDTO>> findAllByName(Set<? extends String> userNames);
+
+    /**
+     * @return  Users per name + surname, a key without users maps to an empty list
+     */
+    Map<UserNameKey, List<UserDTO>> findAllByNameAndSurname(Set<? extends UserNameKey> keys);
+
+    default List<UserDTO> findByName(String userName){
+        return findAllByName(Set.of(userName)).getOrDefault(userName, List.of());
+    }
+
+    default List<UserDTO> findByNameAndSurname(UserNameKey key){
+        return findAllByNameAndSurname(Set.of(key)).getOrDefault(key, List.of());
+    }
+
+    static UserRepository getInstance(){
+        return UserRepositories.INSTANCE;
+    }
+}
@@ -16,6 +16,7 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
 
 @HelidonTest
@@ -96,4 +97,39 @@ class MainTest {
         assertThat(jsonMessage.getMessage(), is("Hola Jose!"));
     }
                 
+    @Test
+    void testInvalidNameIsAnsweredFromTheNegativeCache() {
+        try (Response r = target
+                .path("greet/invalid/Scraper")
+                .request()
+                .post(Entity.text(""))) {
+            assertThat(r.getStatus(), is(200));
+        }
+
+        // The first request reaches the loader, which rejects the name
+        try (Response r = target.path("greet/Scraper").request().get()) {
+            assertThat(r.getStatus(), is(404));
+        }
+        // The next ones do not
+        try (Response r = target.path("greet/Scraper").request().get()) {
+            assertThat(r.getStatus(), is(404));
+        }
+    }
+
+    @Test
+    void testCacheBoundIsChangedAtRuntime() {
+        try (Response r = target
+                .path("admin/caches/greet-negative")
+                .queryParam("maximumSize", 5000)
+                .request()
+                .put(Entity.text(""))) {
+            assertThat(r.getStatus(), is(200));
+            assertThat(r.readEntity(String.class), containsString("\"maximumSize\":5000"));
+        }
+
+        try (Response r = target.path("admin/caches/unknown").queryParam("maximumSize", 1).request().put(Entity.text(""))) {
+            assertThat(r.getStatus(), is(404));
+        }
+    }
+
 }
@@ -0,0 +1,120 @@
+package me.beardedowl.caffeine.benchmark;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import me.beardedowl.caffeine.basic.usage.SimpleGreetController;
+import me.beardedowl.caffeine.singleton.cache.CacheSingleton;
+import me.beardedowl.caffeine.singleton.cache.SanchayMTSafeService;
+import me.beardedowl.caffeine.singleton.cache.UserDTO;
+import me.beardedowl.caffeine.singleton.cache.UserNameKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read path of the caches once they are warm. Every key is put in the caches during setup, so the 3 s loaders
+ * are never reached and only the lookup cost (plus whatever the surrounding code adds) is measured.
+ *
+ * Throughput gives ops/s and SampleTime gives the latency percentiles (p99, p99.9).
+ * Run with the gc profiler to get the allocation rate per operation and with -t for the number of threads
+ *
+ * mvn -Pjmh verify -DskipTests -Djmh.args="CacheReadBenchmark -prof gc -t 4"
+ * or let HotPathThreadSweep run it from 1 to N threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CacheReadBenchmark {
+
+    static final int SAMPLES = 1 << 16;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    @Param({"10000"})
+    int keySpace;
+
+    String[] names;
+    String[] surNames;
+
+    Cache<String, List<UserDTO>> singletonCache;
+    Cache<UserNameKey, List<UserDTO>> surnameCache;
+    SanchayMTSafeService service;
+    LoadingCache<String,String> simpleGreetCache;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        names = new String[keySpace];
+        surNames = new String[keySpace];
+
+        singletonCache = CacheSingleton.getInstance().getMessageCache();
+        surnameCache = CacheSingleton.getInstance().getSurnameCache();
+        service = new SanchayMTSafeService();
+        simpleGreetCache = new SimpleGreetController().getMessageCache();
+
+        for(int i = 0; i < keySpace; i++){
+            names[i] = "user-" + i;
+            surNames[i] = "surname-" + i;
+
+            singletonCache.put(names[i], List.of(new UserDTO(names[i], null)));
+            surnameCache.put(UserNameKey.of(names[i], surNames[i]), List.of(new UserDTO(names[i], surNames[i])));
+            simpleGreetCache.put(names[i], String.format("%s + %s", names[i], names[i].length()));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private static final AtomicLong SEEDS = new AtomicLong(42);
+
+        int[] indices;
+        int position;
+
+        @Setup(Level.Trial)
+        public void setUp(CacheReadBenchmark benchmark){
+            indices = benchmark.distribution.sample(benchmark.keySpace, SAMPLES, SEEDS.getAndIncrement());
+        }
+
+        int next(){
+            return indices[position++ & (SAMPLES - 1)];
+        }
+    }
+
+    @Benchmark
+    public List<UserDTO> singletonCacheGet(Cursor cursor){
+        String key = names[cursor.next()];
+        return singletonCache.get(key, k -> List.of(new UserDTO(k, null)));
+    }
+
+    @Benchmark
+    public List<UserDTO> mtSafeGetCachedDataFromLf1(Cursor cursor){
+        return service.getCachedDataFromLf1(names[cursor.next()]);
+    }
+
+    @Benchmark
+    public List<UserDTO> mtSafeGetCachedDataFromLf2(Cursor cursor){
+        int index = cursor.next();
+        return service.getCachedDataFromLf2(names[index], surNames[index]).join();
+    }
+
+    @Benchmark
+    public String simpleGreetLoadingCacheGet(Cursor cursor){
+        return simpleGreetCache.get(names[cursor.next()]);
+    }
+}
@@ -0,0 +1,39 @@
+package me.beardedowl.caffeine.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs a benchmark (CacheReadBenchmark by default) with 1, 2, 4 ... N threads, N being the number of cores,
+ * with the gc profiler attached so each run reports ops/s, the latency percentiles and the allocation rate.
+ *
+ * mvn -Pjmh verify -DskipTests -Djmh.main=me.beardedowl.caffeine.benchmark.HotPathThreadSweep
+ * mvn -Pjmh verify -DskipTests -Djmh.main=me.beardedowl.caffeine.benchmark.HotPathThreadSweep -Djmh.args="CacheReadBenchmark.singleton 16"
+ */
+public final class HotPathThreadSweep {
+
+    private HotPathThreadSweep(){
+    }
+
+    /**
+     * @param args  : [benchmark regex] [max threads]
+     */
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : CacheReadBenchmark.class.getSimpleName();
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        for(int threads = 1; ; threads = Math.min(threads * 2, maxThreads)){
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class);
+            new Runner(options.build()).run();
+            if(threads == maxThreads){
+                break;
+            }
+        }
+    }
+}
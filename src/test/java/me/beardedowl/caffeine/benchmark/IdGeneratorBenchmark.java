@@ -0,0 +1,51 @@
+package me.beardedowl.caffeine.benchmark;
+
+import me.beardedowl.caffeine.common.IdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ids handed out per microsecond with every thread asking for ids at once, as the loaders creating UserDTOs do.
+ *  blocks      : IdGenerator, one AtomicLong update every 1024 ids per thread
+ *  atomicLong  : one AtomicLong.incrementAndGet() per id, every thread writing the same cache line
+ * The former unsynchronized static int is not measured, it is as fast as a plain increment and returns duplicates.
+ *
+ * Runs with as many threads as cores, -t takes a single count
+ *
+ * mvn -Pjmh verify -DskipTests -Djmh.args="IdGeneratorBenchmark -t 4"
+ * or let HotPathThreadSweep run it from 1 to 16 threads
+ * mvn -Pjmh verify -DskipTests -Djmh.main=me.beardedowl.caffeine.benchmark.HotPathThreadSweep -Djmh.args="IdGeneratorBenchmark 16"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(Threads.MAX)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IdGeneratorBenchmark {
+
+    private final IdGenerator generator = new IdGenerator();
+    private final AtomicLong counter = new AtomicLong();
+
+    @Benchmark
+    public long blocks(){
+        return generator.nextId();
+    }
+
+    @Benchmark
+    public long atomicLong(){
+        return counter.incrementAndGet();
+    }
+}
@@ -0,0 +1,97 @@
+package me.beardedowl.caffeine.benchmark;
+
+import me.beardedowl.caffeine.exception.handling.InvalidNameRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Readers checking names (mostly valid ones, as createResponse does) while a writer keeps adding invalid names.
+ * REGISTRY is InvalidNameRegistry, SYNCHRONIZED_SET the smallest thread-safe fix of the former HashSet.
+ *
+ * mvn -Pjmh verify -DskipTests -Djmh.args="InvalidNameRegistryBenchmark"
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class InvalidNameRegistryBenchmark {
+
+    public enum Implementation {REGISTRY, SYNCHRONIZED_SET}
+
+    @Param({"REGISTRY", "SYNCHRONIZED_SET"})
+    Implementation implementation;
+
+    @Param({"100000"})
+    int invalidNames;
+
+    // Share of the names read which are invalid
+    @Param({"0.01"})
+    double invalidShare;
+
+    private Predicate<String> contains;
+    private Consumer<String> add;
+    private String[] names;
+    private final AtomicLong nextInvalid = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        if(implementation == Implementation.REGISTRY){
+            InvalidNameRegistry registry = new InvalidNameRegistry(invalidNames * 2L, 0.01);
+            contains = registry::contains;
+            add = registry::add;
+        }
+        else{
+            Set<String> set = Collections.synchronizedSet(new HashSet<>());
+            contains = set::contains;
+            add = set::add;
+        }
+        for(int i = 0; i < invalidNames; i++){
+            add.accept("bot-" + i);
+        }
+        nextInvalid.set(invalidNames);
+        names = new String[1 << 16];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for(int i = 0; i < names.length; i++){
+            names[i] = random.nextDouble() < invalidShare
+                    ? "bot-" + random.nextInt(invalidNames)
+                    : "user-" + random.nextInt(1_000_000);
+        }
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(7)
+    public boolean read(){
+        return contains.test(names[ThreadLocalRandom.current().nextInt(names.length)]);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void write(){
+        add.accept("bot-" + nextInvalid.getAndIncrement());
+    }
+}
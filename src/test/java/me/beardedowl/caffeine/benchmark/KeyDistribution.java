@@ -0,0 +1,56 @@
+package me.beardedowl.caffeine.benchmark;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Key access patterns used by the benchmarks.
+ * Indices are sampled up front so that drawing the next key inside a benchmark method is an array read.
+ */
+public enum KeyDistribution {
+
+    /** Every key is equally likely */
+    UNIFORM {
+        @Override
+        public int[] sample(int keySpace, int samples, long seed){
+            SplittableRandom random = new SplittableRandom(seed);
+            int[] indices = new int[samples];
+            for(int i = 0; i < samples; i++){
+                indices[i] = random.nextInt(keySpace);
+            }
+            return indices;
+        }
+    },
+
+    /** A few keys are very hot and there is a long tail, which is what a user lookup usually looks like */
+    ZIPFIAN {
+        @Override
+        public int[] sample(int keySpace, int samples, long seed){
+            double[] cdf = new double[keySpace];
+            double sum = 0;
+            for(int rank = 0; rank < keySpace; rank++){
+                sum += 1.0d / Math.pow(rank + 1, ZIPF_EXPONENT);
+                cdf[rank] = sum;
+            }
+            SplittableRandom random = new SplittableRandom(seed);
+            int[] indices = new int[samples];
+            for(int i = 0; i < samples; i++){
+                double target = random.nextDouble() * sum;
+                int position = Arrays.binarySearch(cdf, target);
+                indices[i] = position >= 0 ? position : Math.min(-position - 1, keySpace - 1);
+            }
+            return indices;
+        }
+    };
+
+    /** Same skew as YCSB's zipfian generator */
+    static final double ZIPF_EXPONENT = 0.99d;
+
+    /**
+     * @param keySpace  : Number of distinct keys, indices are in [0, keySpace)
+     * @param samples   : Number of indices to draw, should be a power of two so callers can wrap with a mask
+     * @param seed      : Seed, use a different one per benchmark thread
+     * @return  Key indices following this distribution
+     */
+    public abstract int[] sample(int keySpace, int samples, long seed);
+}
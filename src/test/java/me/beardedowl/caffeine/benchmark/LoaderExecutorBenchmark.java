@@ -0,0 +1,81 @@
+package me.beardedowl.caffeine.benchmark;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import me.beardedowl.caffeine.common.LoaderExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start storm : a fresh cache receives {@code keys} distinct keys at once and every one of them misses.
+ * The loader blocks for {@code loadMillis} like the LocalUserRepository behind the controllers.
+ * One operation is one complete storm, so loads per second = score * keys.
+ *
+ * mvn -Pjmh verify -DskipTests -Djmh.args="LoaderExecutorBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class LoaderExecutorBenchmark {
+
+    @Param({"VIRTUAL", "PLATFORM", "COMMON"})
+    LoaderExecutor.Mode mode;
+
+    @Param({"2000"})
+    int keys;
+
+    @Param({"10"})
+    long loadMillis;
+
+    @Param({"64"})
+    int poolSize;
+
+    private Executor executor;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        executor = LoaderExecutor.create(mode, poolSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        if(executor instanceof ExecutorService && mode != LoaderExecutor.Mode.COMMON){
+            ((ExecutorService) executor).shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public int coldKeyStorm(){
+        AsyncLoadingCache<Integer,Integer> cache = Caffeine.newBuilder()
+                .executor(executor)
+                .buildAsync(key -> {
+                    Thread.sleep(loadMillis);
+                    return key;
+                });
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[keys];
+        for(int i = 0; i < keys; i++){
+            futures[i] = cache.get(i);
+        }
+        CompletableFuture.allOf(futures).join();
+        return futures.length;
+    }
+}
@@ -0,0 +1,107 @@
+package me.beardedowl.caffeine.benchmark;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import me.beardedowl.caffeine.common.LatencyDistribution;
+import me.beardedowl.caffeine.common.LoaderExecutor;
+import me.beardedowl.caffeine.common.MicroBatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Many threads missing on different keys at the same time, as SanchayController sees under load.
+ * The backend costs {@code loadMillis} per call whatever the number of keys, like one round trip. With
+ * latency=lognormal that is the median and one call in a hundred takes more than 10 times as long, as a real backend
+ * would (see LatencyDistribution).
+ *
+ * windowMillis=0 sends every key on its own, which is what the controllers did before batching. The latency
+ * percentiles come from SampleTime, the loader invocations per key are printed at the end of each trial.
+ *
+ * mvn -Pjmh verify -DskipTests -Djmh.args="MicroBatcherBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(64)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class MicroBatcherBenchmark {
+
+    @Param({"0", "2"})
+    long windowMillis;
+
+    @Param({"64"})
+    int maxBatchSize;
+
+    @Param({"5"})
+    long loadMillis;
+
+    @Param({"fixed", "lognormal"})
+    String latency;
+
+    private final AtomicLong nextKey = new AtomicLong();
+    private ExecutorService executor;
+    private MicroBatcher<Long, Long> batcher;
+    private AsyncCache<Long, Long> cache;
+    private LatencyDistribution backend;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        backend = "lognormal".equals(latency)
+                ? LatencyDistribution.logNormal(Duration.ofMillis(loadMillis), Duration.ofMillis(10 * loadMillis))
+                : LatencyDistribution.fixed(Duration.ofMillis(loadMillis));
+        Executor pool = LoaderExecutor.create(LoaderExecutor.Mode.PLATFORM, 256);
+        executor = (ExecutorService) pool;
+        batcher = new MicroBatcher<Long, Long>("benchmark", this::loadAll, Duration.ofMillis(windowMillis), maxBatchSize, executor);
+        cache = Caffeine.newBuilder()
+                .executor(executor)
+                .maximumSize(100_000)
+                .buildAsync();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        System.out.printf("%nwindow=%d ms, %s latency : %d keys loaded in %d loader calls (%.1f keys per call)%n",
+                windowMillis, latency, batcher.keyCount(), batcher.batchCount(),
+                (double) batcher.keyCount() / Math.max(1, batcher.batchCount()));
+        executor.shutdownNow();
+    }
+
+    private Map<Long, Long> loadAll(Set<? extends Long> keys){
+        try{
+            backend.sleep();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        Map<Long, Long> values = new HashMap<>();
+        keys.forEach(key -> values.put(key, key));
+        return values;
+    }
+
+    @Benchmark
+    public Long miss(){
+        return cache.get(nextKey.incrementAndGet(), (key, executor) -> batcher.load(key)).join();
+    }
+}
@@ -0,0 +1,112 @@
+package me.beardedowl.caffeine.benchmark;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import me.beardedowl.caffeine.common.CacheSnapshotFile;
+import me.beardedowl.caffeine.common.LoaderExecutor;
+import me.beardedowl.caffeine.common.SnapshotCodec;
+import me.beardedowl.caffeine.common.WriteExpiry;
+import me.beardedowl.caffeine.singleton.cache.UserDTO;
+import me.beardedowl.caffeine.singleton.cache.UserDTOCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to warm : how long a fresh CacheSingleton-like cache takes to hold {@code entries} keys, either loaded by the
+ * loader (blocking {@code loadMillis} per key, on the configured loader executor) as traffic would after a cold
+ * restart, or read back from a snapshot written during setup.
+ * One operation is one complete warm-up.
+ *
+ * mvn -Pjmh verify -DskipTests -Djmh.args="SnapshotWarmupBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class SnapshotWarmupBenchmark {
+
+    @Param({"100000"})
+    int entries;
+
+    @Param({"1"})
+    long loadMillis;
+
+    private Path snapshot;
+
+    private static Cache<String, List<UserDTO>> newCache(){
+        return Caffeine.newBuilder()
+                .executor(LoaderExecutor.getInstance().getExecutor())
+                .expireAfter(new WriteExpiry<String, List<UserDTO>>(Duration.ofMinutes(2)))
+                .build();
+    }
+
+    private static List<UserDTO> load(String key){
+        return List.of(new UserDTO(key, "Surname-" + key));
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Cache<String, List<UserDTO>> cache = newCache();
+        for(int i = 0; i < entries; i++){
+            String key = "User-" + i;
+            cache.put(key, load(key));
+        }
+        snapshot = Files.createTempFile("message", ".snapshot");
+        CacheSnapshotFile.write(snapshot, cache, SnapshotCodec.STRING, UserDTOCodec.INSTANCE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(snapshot);
+    }
+
+    @Benchmark
+    public long warmFromLoader(){
+        AsyncCache<String, List<UserDTO>> cache = Caffeine.newBuilder()
+                .executor(LoaderExecutor.getInstance().getExecutor())
+                .expireAfter(new WriteExpiry<String, List<UserDTO>>(Duration.ofMinutes(2)))
+                .buildAsync();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[entries];
+        for(int i = 0; i < entries; i++){
+            futures[i] = cache.get("User-" + i, key -> {
+                try{
+                    Thread.sleep(loadMillis);
+                }catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+                return load(key);
+            });
+        }
+        CompletableFuture.allOf(futures).join();
+        return cache.synchronous().estimatedSize();
+    }
+
+    @Benchmark
+    public long warmFromSnapshot() throws IOException {
+        Cache<String, List<UserDTO>> cache = newCache();
+        CacheSnapshotFile.restore(snapshot, cache, SnapshotCodec.STRING, UserDTOCodec.INSTANCE);
+        return cache.estimatedSize();
+    }
+}
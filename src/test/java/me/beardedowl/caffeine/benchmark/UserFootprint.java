@@ -0,0 +1,63 @@
+package me.beardedowl.caffeine.benchmark;
+
+import me.beardedowl.caffeine.singleton.cache.UserDTO;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.List;
+
+/**
+ * Retained heap of the values of CacheSingleton, measured with JOL : {@code users} entries "name:surname" loaded the
+ * way loadAllFunction2 does (splitting the key), with {@code surnames} distinct surnames.
+ *  mutable   : the former UserDTO, a bean with setters and an int id whose surname is a new String for every load
+ *  immutable : UserDTO, final fields and interned surnames
+ * Only the values are measured (and the array holding them), the keys and the cache are the same for both.
+ *
+ * mvn -Pjmh verify -DskipTests -Djmh.main=me.beardedowl.caffeine.benchmark.UserFootprint
+ * mvn -Pjmh verify -DskipTests -Djmh.main=me.beardedowl.caffeine.benchmark.UserFootprint -Djmh.args="1000000 100"
+ */
+public final class UserFootprint {
+
+    /** UserDTO before it was made immutable */
+    static final class MutableUserDTO {
+        String userName;
+        String surName;
+        int id;
+
+        MutableUserDTO(int id, String userName, String surName) {
+            this.userName = userName;
+            this.surName = surName;
+            this.id = id;
+        }
+    }
+
+    private UserFootprint(){
+    }
+
+    /**
+     * @param args  : [users] [distinct surnames]
+     */
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int surnames = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+        // Arrays rather than maps so that the keys are not measured
+        Object[] mutable = new Object[users];
+        Object[] immutable = new Object[users];
+        for(int i = 0; i < users; i++){
+            String key = "User-" + i + ":Surname-" + (i % surnames);
+            String[] mutableParts = key.split(":");
+            mutable[i] = List.of(new MutableUserDTO(i, mutableParts[0], mutableParts[1]));
+            String[] parts = key.split(":");
+            immutable[i] = List.of(new UserDTO(parts[0], parts[1]));
+        }
+
+        report("mutable", mutable, users);
+        report("immutable", immutable, users);
+    }
+
+    private static void report(String name, Object[] values, int users){
+        GraphLayout layout = GraphLayout.parseInstance((Object) values);
+        System.out.printf("%n%s : %d bytes, %.1f bytes per entry%n%s", name, layout.totalSize(),
+                (double) layout.totalSize() / users, layout.toFootprint());
+    }
+}
@@ -0,0 +1,108 @@
+package me.beardedowl.caffeine.benchmark;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import me.beardedowl.caffeine.singleton.cache.UserNameKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the name + surname keys of SanchayController / SanchayMTSafeService, per request.
+ *  formatKey / keyOf           : building the key only
+ *  formatLookup / keyLookup    : building the key and reading a warm cache with it, what a hit costs
+ *  splitKey / keyParts         : getting the name and the surname back, as the loaders do
+ * Run with the gc profiler to compare the allocations per operation.
+ *
+ * mvn -Pjmh verify -DskipTests -Djmh.args="UserNameKeyBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UserNameKeyBenchmark {
+
+    @Param({"10000"})
+    int keySpace;
+
+    String[] names;
+    String[] surNames;
+    String[] formattedKeys;
+    UserNameKey[] keys;
+
+    Cache<String, String> formatCache;
+    Cache<UserNameKey, String> keyCache;
+
+    private int position;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        names = new String[keySpace];
+        surNames = new String[keySpace];
+        formattedKeys = new String[keySpace];
+        keys = new UserNameKey[keySpace];
+        formatCache = Caffeine.newBuilder().build();
+        keyCache = Caffeine.newBuilder().build();
+        for(int i = 0; i < keySpace; i++){
+            names[i] = "user-" + i;
+            surNames[i] = "surname-" + i;
+            formattedKeys[i] = String.format("%s:%s", names[i], surNames[i]);
+            keys[i] = UserNameKey.of(names[i], surNames[i]);
+            formatCache.put(formattedKeys[i], names[i]);
+            keyCache.put(keys[i], names[i]);
+        }
+    }
+
+    private int next(){
+        position = (position + 1) % keySpace;
+        return position;
+    }
+
+    @Benchmark
+    public String formatKey(){
+        int i = next();
+        return String.format("%s:%s", names[i], surNames[i]);
+    }
+
+    @Benchmark
+    public UserNameKey keyOf(){
+        int i = next();
+        return UserNameKey.of(names[i], surNames[i]);
+    }
+
+    @Benchmark
+    public String formatLookup(){
+        int i = next();
+        return formatCache.getIfPresent(String.format("%s:%s", names[i], surNames[i]));
+    }
+
+    @Benchmark
+    public String keyLookup(){
+        int i = next();
+        return keyCache.getIfPresent(UserNameKey.of(names[i], surNames[i]));
+    }
+
+    @Benchmark
+    public String splitKey(){
+        String[] parts = formattedKeys[next()].split(":");
+        return parts[1];
+    }
+
+    @Benchmark
+    public String keyParts(){
+        return keys[next()].getSurName();
+    }
+}
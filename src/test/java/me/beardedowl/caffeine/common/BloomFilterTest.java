@@ -0,0 +1,30 @@
+package me.beardedowl.caffeine.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+class BloomFilterTest {
+
+    @Test
+    void testNoFalseNegativesAndFalsePositivesCloseToTheTarget() {
+        int insertions = 100_000;
+        BloomFilter filter = new BloomFilter(insertions, 0.01);
+        for(int i = 0; i < insertions; i++){
+            filter.put("name-" + i);
+        }
+        for(int i = 0; i < insertions; i++){
+            assertThat(filter.mightContain("name-" + i), is(true));
+        }
+
+        int falsePositives = 0;
+        for(int i = 0; i < insertions; i++){
+            if(filter.mightContain("other-" + i)){
+                falsePositives++;
+            }
+        }
+        assertThat((double) falsePositives / insertions, lessThan(0.02));
+    }
+}
@@ -0,0 +1,96 @@
+package me.beardedowl.caffeine.common;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CacheRegistryTest {
+
+    @Test
+    void testSettingsAreAppliedToTheBuilder() {
+        CacheSettings settings = new CacheSettings(Optional.of(500L), Optional.empty(),
+                Optional.of(Duration.ofSeconds(30)), Optional.empty(), false);
+        Cache<String, String> cache = settings.<String, String>newBuilder("registry-test-settings", Duration.ofMinutes(2), null).build();
+        cache.put("key", "value");
+
+        assertThat(cache.policy().eviction().orElseThrow().getMaximum(), is(500L));
+        // Time left, truncated to whole seconds
+        long expiresAfter = cache.policy().expireVariably().orElseThrow().getExpiresAfter("key", TimeUnit.SECONDS).orElseThrow();
+        assertThat(expiresAfter, greaterThan(25L));
+        assertThat(expiresAfter, lessThanOrEqualTo(30L));
+        assertThat(cache.policy().isRecordingStats(), is(false));
+    }
+
+    @Test
+    void testDefaultExpiryWhenNoneIsConfigured() {
+        CacheSettings settings = new CacheSettings(Optional.of(10L), Optional.empty(), Optional.empty(), Optional.empty(), true);
+        Cache<String, String> cache = settings.<String, String>newBuilder("registry-test-default", Duration.ofMinutes(2), null).build();
+        cache.put("key", "value");
+
+        long expiresAfter = cache.policy().expireVariably().orElseThrow().getExpiresAfter("key", TimeUnit.SECONDS).orElseThrow();
+        assertThat(expiresAfter, greaterThan(115L));
+        assertThat(expiresAfter, lessThanOrEqualTo(120L));
+    }
+
+    @Test
+    void testCachesAreLookedUpByName() {
+        CacheRegistry registry = CacheRegistry.getInstance();
+        AsyncCache<String, String> cache = registry.settings("registry-test-lookup")
+                .<String, String>newBuilder("registry-test-lookup", Duration.ofMinutes(1), null)
+                .buildAsync();
+        registry.register("registry-test-lookup", cache);
+
+        assertThat(registry.<String, String>getAsync("registry-test-lookup"), is(sameInstance(cache)));
+        registry.<String, String>get("registry-test-lookup").put("key", "value");
+        assertThat(cache.synchronous().getIfPresent("key"), is("value"));
+        assertThat(registry.names(), hasItem("registry-test-lookup"));
+        assertThrows(IllegalArgumentException.class, () -> registry.get("registry-test-unknown"));
+    }
+
+    @Test
+    void testSpecIsReadAndIndividualPropertiesWin() {
+        CacheSettings settings = CacheSettings.parse("maximumSize=1000, expireAfterWrite=5m,refreshAfterWrite=PT30S,recordStats");
+
+        assertThat(settings.getMaximumSize().orElseThrow(), is(1000L));
+        assertThat(settings.getExpireAfterWrite().orElseThrow(), is(Duration.ofMinutes(5)));
+        assertThat(settings.getRefreshAfterWrite().orElseThrow(), is(Duration.ofSeconds(30)));
+        assertThat(settings.isRecordStats(), is(true));
+        assertThat(CacheSettings.parse("maximumSize=10").isRecordStats(), is(false));
+        assertThrows(IllegalArgumentException.class, () -> CacheSettings.parse("maximumSize=10,weakKeys"));
+        assertThrows(IllegalArgumentException.class, () -> CacheSettings.parse("maximumSize=ten"));
+    }
+
+    @Test
+    void testExpiryChangeMovesTheRemainingTimeOfEntries() {
+        CacheRegistry registry = CacheRegistry.getInstance();
+        CacheSettings settings = new CacheSettings(Optional.of(100L), Optional.empty(), Optional.empty(), Optional.empty(), true);
+        WriteExpiry<String, String> expiry = settings.newExpiry(Duration.ofMinutes(10));
+        Cache<String, String> cache = settings.newBuilder("registry-test-expiry", expiry, null).build();
+        registry.register("registry-test-expiry", cache, expiry);
+        cache.put("old", "value");
+
+        registry.setExpireAfterWrite("registry-test-expiry", Duration.ofMinutes(1));
+        registry.setMaximum("registry-test-expiry", 10);
+        cache.put("new", "value");
+
+        long oldLeft = cache.policy().expireVariably().orElseThrow().getExpiresAfter("old", TimeUnit.SECONDS).orElseThrow();
+        long newLeft = cache.policy().expireVariably().orElseThrow().getExpiresAfter("new", TimeUnit.SECONDS).orElseThrow();
+        assertThat(oldLeft, lessThanOrEqualTo(60L));
+        assertThat(newLeft, lessThanOrEqualTo(60L));
+        assertThat(newLeft, greaterThan(55L));
+        assertThat(registry.getExpireAfterWrite("registry-test-expiry").orElseThrow(), is(Duration.ofMinutes(1)));
+        assertThat(cache.policy().eviction().orElseThrow().getMaximum(), is(10L));
+    }
+}
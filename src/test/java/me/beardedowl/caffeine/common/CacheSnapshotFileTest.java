@@ -0,0 +1,57 @@
+package me.beardedowl.caffeine.common;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+class CacheSnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    private static Cache<String, String> newCache(){
+        return Caffeine.newBuilder()
+                .expireAfter(new WriteExpiry<String, String>(Duration.ofMinutes(2)))
+                .build();
+    }
+
+    @Test
+    void testRestoreKeepsEntriesAndTheirRemainingTime() throws Exception {
+        Path file = directory.resolve("message.snapshot");
+        Cache<String, String> cache = newCache();
+        cache.put("Joe", "Hello Joe");
+        cache.put("Jane", "Hello Jane");
+        cache.policy().expireVariably().get().put("Short", "lived", 1, TimeUnit.MINUTES);
+
+        assertThat(CacheSnapshotFile.write(file, cache, SnapshotCodec.STRING, SnapshotCodec.STRING), is(3));
+
+        Cache<String, String> restored = newCache();
+        assertThat(CacheSnapshotFile.restore(file, restored, SnapshotCodec.STRING, SnapshotCodec.STRING), is(3));
+        assertThat(restored.getIfPresent("Joe"), is("Hello Joe"));
+        long remaining = restored.policy().expireVariably().get().getExpiresAfter("Short", TimeUnit.SECONDS).getAsLong();
+        assertThat(remaining, lessThanOrEqualTo(60L));
+        assertThat(remaining, greaterThan(50L));
+    }
+
+    @Test
+    void testMissingOrForeignFileRestoresNothing() throws Exception {
+        Cache<String, String> cache = newCache();
+        assertThat(CacheSnapshotFile.restore(directory.resolve("absent.snapshot"), cache, SnapshotCodec.STRING, SnapshotCodec.STRING), is(0));
+
+        Path foreign = Files.writeString(directory.resolve("foreign.snapshot"), "not a snapshot at all");
+        assertThat(CacheSnapshotFile.restore(foreign, cache, SnapshotCodec.STRING, SnapshotCodec.STRING), is(0));
+        assertThat(cache.getIfPresent("Joe"), is(nullValue()));
+    }
+}
@@ -0,0 +1,194 @@
+package me.beardedowl.caffeine.common;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+class CacheWarmerTest {
+
+    @TempDir
+    Path directory;
+
+    private static void awaitDone(CacheWarmer warmer, String cacheName) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(!warmer.isDone(cacheName) && System.nanoTime() < deadline){
+            Thread.sleep(10);
+        }
+        assertThat(warmer.isDone(cacheName), is(true));
+    }
+
+    @Test
+    void testPreloadsConfiguredKeysThenTheHottestOfThePreviousRun() throws Exception {
+        Files.write(directory.resolve("message" + CacheWarmer.FILE_SUFFIX), List.of("Jane", "Jim"), StandardCharsets.UTF_8);
+        CacheWarmer warmer = new CacheWarmer(name -> List.of("Joe", "Jane"), directory, 10, 4, 1, Duration.ofMinutes(1), Runnable::run);
+        Cache<String, String> cache = Caffeine.newBuilder().maximumSize(100).build();
+        cache.put("Joe", "restored");
+        AtomicInteger loads = new AtomicInteger();
+
+        warmer.register("message", cache, key -> {
+            loads.incrementAndGet();
+            cache.put(key, "Hello " + key);
+        });
+        awaitDone(warmer, "message");
+
+        // Joe was already there, Jane is only loaded once
+        assertThat(loads.get(), is(2));
+        assertThat(cache.getIfPresent("Joe"), is("restored"));
+        assertThat(cache.getIfPresent("Jim"), is("Hello Jim"));
+        assertThat(warmer.isReady(), is(true));
+        assertThat(warmer.progress(), is(Map.of("message", "3/3")));
+    }
+
+    @Test
+    void testReadinessFollowsTheTargetCoverage() throws Exception {
+        CacheWarmer warmer = new CacheWarmer(name -> List.of("a", "b", "c", "d"), null, 10, 1, 0.5, Duration.ofMinutes(1),
+                Executors.newCachedThreadPool());
+        Cache<String, String> cache = Caffeine.newBuilder().build();
+        CountDownLatch release = new CountDownLatch(1);
+        warmer.register("message", cache, key -> {
+            if(key.equals("c")){
+                try{
+                    release.await();
+                }catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+            }
+            cache.put(key, key);
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(warmer.coverage("message") < 0.5 && System.nanoTime() < deadline){
+            Thread.sleep(10);
+        }
+        // a and b are loaded, c holds the only slot
+        assertThat(warmer.coverage("message"), is(0.5));
+        assertThat(warmer.isReady(), is(true));
+
+        CacheWarmer strict = new CacheWarmer(name -> List.of("x"), null, 10, 1, 1, Duration.ofMinutes(1), Runnable::run);
+        strict.register("strict", cache, key -> {
+            throw new IllegalStateException("backend down");
+        });
+        awaitDone(strict, "strict");
+        assertThat(strict.isReady(), is(false));
+        assertThat(strict.progress(), is(Map.of("strict", "0/1 (1 failed)")));
+        release.countDown();
+        awaitDone(warmer, "message");
+    }
+
+    @Test
+    void testReadyAfterTheTimeoutWhateverTheCoverage() throws Exception {
+        CacheWarmer warmer = new CacheWarmer(name -> List.of("x"), null, 10, 1, 1, Duration.ZERO, Runnable::run);
+        warmer.register("message", Caffeine.newBuilder().build(), key -> {
+            throw new IllegalStateException("backend down");
+        });
+
+        assertThat(warmer.isReady(), is(true));
+    }
+
+    @Test
+    void testLoadsAreBounded() throws Exception {
+        List<String> keys = new ArrayList<>();
+        for(int i = 0; i < 50; i++){
+            keys.add("user" + i);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CacheWarmer warmer = new CacheWarmer(name -> keys, null, 10, 3, 1, Duration.ofMinutes(1), executor);
+        Cache<String, String> cache = Caffeine.newBuilder().build();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        warmer.register("message", cache, key -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try{
+                Thread.sleep(2);
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            cache.put(key, key);
+            running.decrementAndGet();
+        });
+        awaitDone(warmer, "message");
+        executor.shutdown();
+
+        assertThat(cache.estimatedSize(), is(50L));
+        assertThat(maxRunning.get(), lessThanOrEqualTo(3));
+    }
+
+    @Test
+    void testAsyncLoadsAreBoundedWithoutHoldingAThread() throws Exception {
+        // Loads given to registerAsync() never run on the executor
+        CacheWarmer warmer = new CacheWarmer(name -> List.of("a", "b", "c", "d"), null, 10, 2, 1, Duration.ofMinutes(1),
+                runnable -> {
+                    throw new AssertionError("async loads must not run on the executor");
+                });
+        Cache<String, String> cache = Caffeine.newBuilder().build();
+        ConcurrentLinkedQueue<CompletableFuture<String>> inFlight = new ConcurrentLinkedQueue<>();
+
+        warmer.registerAsync("message", cache, key -> {
+            CompletableFuture<String> load = new CompletableFuture<>();
+            load.thenAccept(value -> cache.put(key, value));
+            inFlight.add(load);
+            return load;
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(inFlight.size() < 2 && System.nanoTime() < deadline){
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        // The two permits are held until the futures complete
+        assertThat(inFlight.size(), is(2));
+
+        while(!warmer.isDone("message") && System.nanoTime() < deadline){
+            CompletableFuture<String> load = inFlight.poll();
+            if(load == null){
+                Thread.sleep(10);
+            }
+            else if(inFlight.isEmpty() && cache.estimatedSize() == 3){
+                load.completeExceptionally(new IllegalStateException("backend down"));
+            }
+            else{
+                load.complete("loaded");
+            }
+        }
+        assertThat(warmer.isDone("message"), is(true));
+        assertThat(warmer.progress(), is(Map.of("message", "3/4 (1 failed)")));
+    }
+
+    @Test
+    void testWritesTheHottestKeys() throws Exception {
+        CacheWarmer warmer = new CacheWarmer(name -> List.of(), directory, 2, 1, 1, Duration.ofMinutes(1), Runnable::run);
+        Cache<String, String> cache = Caffeine.newBuilder().maximumSize(100).executor(Runnable::run).build();
+        warmer.register("message", cache, key -> cache.put(key, key));
+        for(String key : List.of("Joe", "Jane", "Jim")){
+            cache.put(key, key);
+        }
+        cache.cleanUp();
+
+        warmer.writeTopKeys();
+
+        // Only the top-keys most likely to be kept by the eviction policy
+        List<String> written = Files.readAllLines(directory.resolve("message" + CacheWarmer.FILE_SUFFIX), StandardCharsets.UTF_8);
+        assertThat(written.size(), is(2));
+        assertThat(cache.asMap().keySet().containsAll(written), is(true));
+        assertThat(Files.exists(directory.resolve("message" + CacheWarmer.FILE_SUFFIX + ".tmp")), is(false));
+    }
+}
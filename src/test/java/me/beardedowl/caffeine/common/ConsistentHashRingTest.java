@@ -0,0 +1,64 @@
+package me.beardedowl.caffeine.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 30_000;
+
+    @Test
+    void testKeysAreSpreadEvenly() {
+        ConsistentHashRing ring = ConsistentHashRing.of(List.of("http://a:8081", "http://b:8081", "http://c:8081"), 128);
+        Map<String, Integer> owned = new HashMap<>();
+        for(int i = 0; i < KEYS; i++){
+            owned.merge(ring.ownerOf("user-" + i), 1, Integer::sum);
+        }
+        for(String node : ring.nodes()){
+            // A third each, give or take
+            assertThat(owned.get(node), greaterThan(KEYS / 4));
+            assertThat(owned.get(node), lessThan(KEYS / 2));
+        }
+    }
+
+    @Test
+    void testOrderOfTheNodesDoesNotMatter() {
+        ConsistentHashRing ring = ConsistentHashRing.of(List.of("http://a:8081", "http://b:8081", "http://c:8081"), 128);
+        ConsistentHashRing other = ConsistentHashRing.of(List.of("http://c:8081", "http://a:8081", "http://b:8081"), 128);
+        for(int i = 0; i < 1000; i++){
+            assertThat(other.ownerOf("user-" + i), is(ring.ownerOf("user-" + i)));
+        }
+    }
+
+    @Test
+    void testAddingANodeOnlyMovesKeysToIt() {
+        ConsistentHashRing ring = ConsistentHashRing.of(List.of("http://a:8081", "http://b:8081", "http://c:8081"), 128);
+        ConsistentHashRing grown = ConsistentHashRing.of(List.of("http://a:8081", "http://b:8081", "http://c:8081", "http://d:8081"), 128);
+        int moved = 0;
+        for(int i = 0; i < KEYS; i++){
+            String before = ring.ownerOf("user-" + i);
+            String after = grown.ownerOf("user-" + i);
+            if(!before.equals(after)){
+                assertThat(after, is("http://d:8081"));
+                moved++;
+            }
+        }
+        // About a quarter of the keys
+        assertThat(moved, greaterThan(KEYS / 6));
+        assertThat(moved, lessThan(KEYS / 3));
+    }
+
+    @Test
+    void testRingNeedsANode() {
+        assertThrows(IllegalArgumentException.class, () -> ConsistentHashRing.of(List.of(), 128));
+    }
+}
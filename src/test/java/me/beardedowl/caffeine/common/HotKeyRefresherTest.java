@@ -0,0 +1,80 @@
+package me.beardedowl.caffeine.common;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class HotKeyRefresherTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private LoadingCache<String, String> newCache(){
+        Ticker ticker = now::get;
+        return Caffeine.newBuilder()
+                .ticker(ticker)
+                .executor(Runnable::run)
+                .expireAfter(new WriteExpiry<String, String>(Duration.ofMinutes(2)))
+                .build(key -> key + "-" + loads.incrementAndGet());
+    }
+
+    @Test
+    void testOnlyHotKeysCloseToTheirExpiryAreRefreshed() {
+        LoadingCache<String, String> cache = newCache();
+        HotKeyRefresher<String, String> refresher = new HotKeyRefresher<>("test", cache, Duration.ofMinutes(1), 100);
+        cache.get("hot");
+        cache.get("cold");
+        refresher.recordRead("hot");
+
+        // Two minutes to live, both keys are still far from expiring
+        assertThat(refresher.refreshDue(), is(0));
+
+        now.addAndGet(Duration.ofSeconds(90).toNanos());
+        assertThat(refresher.refreshDue(), is(1));
+        assertThat(cache.getIfPresent("hot"), is("hot-3"));
+        assertThat(cache.getIfPresent("cold"), is("cold-2"));
+
+        // Refreshed, so not hot anymore until it is read again
+        now.addAndGet(Duration.ofSeconds(90).toNanos());
+        assertThat(refresher.refreshDue(), is(0));
+    }
+
+    @Test
+    void testRefreshesPerRunAreCapped() {
+        LoadingCache<String, String> cache = newCache();
+        HotKeyRefresher<String, String> refresher = new HotKeyRefresher<>("test", cache, Duration.ofMinutes(1), 2);
+        for(int i = 0; i < 5; i++){
+            cache.get("key" + i);
+            refresher.recordRead("key" + i);
+        }
+
+        now.addAndGet(Duration.ofSeconds(90).toNanos());
+
+        assertThat(refresher.refreshDue(), is(2));
+        assertThat(refresher.refreshDue(), is(2));
+        assertThat(refresher.refreshDue(), is(1));
+    }
+
+    @Test
+    void testJitteredDurationsStayWithinBounds() {
+        JitteredExpiry<String, String> expiry = new JitteredExpiry<>(Duration.ofMinutes(2), 0.2);
+        long low = Duration.ofSeconds(96).toNanos();
+        long high = Duration.ofSeconds(144).toNanos();
+        long first = expiry.expireAfterCreate("key", "value", 0);
+        boolean spread = false;
+        for(int i = 0; i < 100; i++){
+            long duration = expiry.expireAfterCreate("key", "value", 0);
+            assertThat(duration >= low && duration <= high, is(true));
+            spread |= duration != first;
+        }
+        assertThat(spread, is(true));
+    }
+}
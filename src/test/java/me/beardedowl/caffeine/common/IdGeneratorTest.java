@@ -0,0 +1,63 @@
+package me.beardedowl.caffeine.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class IdGeneratorTest {
+
+    private static final int THREADS = 16;
+    private static final int IDS_PER_THREAD = 50_000;
+
+    @Test
+    void testIdsAreUniqueAcrossThreads() throws Exception {
+        // Small blocks so that the threads go back to the shared counter often
+        IdGenerator generator = new IdGenerator(7);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<Integer>> duplicates = new ArrayList<>();
+        for(int t = 0; t < THREADS; t++){
+            duplicates.add(pool.submit(() -> {
+                start.await();
+                int duplicated = 0;
+                for(int i = 0; i < IDS_PER_THREAD; i++){
+                    if(!ids.add(generator.nextId())){
+                        duplicated++;
+                    }
+                }
+                return duplicated;
+            }));
+        }
+        start.countDown();
+        for(Future<Integer> future : duplicates){
+            assertThat(future.get(30, TimeUnit.SECONDS), is(0));
+        }
+        pool.shutdown();
+
+        assertThat(ids.size(), is(THREADS * IDS_PER_THREAD));
+    }
+
+    @Test
+    void testIdsIncreaseWithinAThread() {
+        IdGenerator generator = new IdGenerator(3);
+        long previous = generator.nextId();
+        for(int i = 0; i < 10; i++){
+            long id = generator.nextId();
+            assertThat(id > previous, is(true));
+            previous = id;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package me.beardedowl.caffeine.common;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+class InvalidationBusTest {
+
+    private static final String CACHE_NAME = "invalidation-test";
+
+    /**
+     * Hands every packet to every bus of the group, the sender included, the way multicast with loop does
+     */
+    private static final class LoopbackTransport implements InvalidationTransport {
+        private final List<Consumer<ByteBuffer>> group;
+        private final List<Integer> sentLengths = new ArrayList<>();
+
+        LoopbackTransport(List<Consumer<ByteBuffer>> group) {
+            this.group = group;
+        }
+
+        @Override
+        public void start(Consumer<ByteBuffer> receiver) {
+            group.add(receiver);
+        }
+
+        @Override
+        public void send(byte[] packet, int length) {
+            sentLengths.add(length);
+            for(Consumer<ByteBuffer> receiver : group){
+                receiver.accept(ByteBuffer.wrap(packet.clone(), 0, length));
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final List<Consumer<ByteBuffer>> group = new CopyOnWriteArrayList<>();
+    private final List<InvalidationBus> buses = new ArrayList<>();
+
+    // Never flushed by its timer, the tests call flush()
+    private InvalidationBus newBus(LoopbackTransport transport){
+        InvalidationBus bus = new InvalidationBus(transport, Duration.ofHours(1), 1400);
+        bus.start();
+        buses.add(bus);
+        return bus;
+    }
+
+    private static Cache<String, String> newCache(String... keys){
+        Cache<String, String> cache = Caffeine.newBuilder().build();
+        for(String key : keys){
+            cache.put(key, "value-" + key);
+        }
+        return cache;
+    }
+
+    @AfterEach
+    void closeBuses(){
+        buses.forEach(InvalidationBus::close);
+    }
+
+    @Test
+    void testInvalidationsReachTheOtherInstance() {
+        InvalidationBus first = newBus(new LoopbackTransport(group));
+        InvalidationBus second = newBus(new LoopbackTransport(group));
+        Cache<String, String> firstCache = newCache("Joe", "Jane", "Jim", "Bob");
+        Cache<String, String> secondCache = newCache("Joe", "Jane", "Jim", "Bob");
+        first.register(CACHE_NAME, firstCache, SnapshotCodec.STRING);
+        second.register(CACHE_NAME, secondCache, SnapshotCodec.STRING);
+
+        first.invalidate(CACHE_NAME, "Joe");
+        assertThat(firstCache.getIfPresent("Joe"), nullValue());
+        // Not sent before the end of the window
+        assertThat(secondCache.getIfPresent("Joe"), is("value-Joe"));
+
+        first.flush();
+        assertThat(secondCache.getIfPresent("Joe"), nullValue());
+        assertThat(secondCache.getIfPresent("Jane"), is("value-Jane"));
+
+        second.invalidatePrefix(CACHE_NAME, "J");
+        second.flush();
+        assertThat(firstCache.asMap().keySet(), is(Set.of("Bob")));
+        assertThat(secondCache.asMap().keySet(), is(Set.of("Bob")));
+
+        first.invalidateAll(CACHE_NAME);
+        first.flush();
+        assertThat(secondCache.estimatedSize(), is(0L));
+        // Each bus got its own packet back and ignored it
+        assertThat(first.packetsReceived(), is(1L));
+        assertThat(second.packetsReceived(), is(2L));
+    }
+
+    @Test
+    void testGroupInvalidationOnlyMatchesTheWholeGroup() {
+        InvalidationBus first = newBus(new LoopbackTransport(group));
+        InvalidationBus second = newBus(new LoopbackTransport(group));
+        // Keys are user|surname, grouped by user
+        Cache<String, String> firstCache = newCache("a|x", "a|y", "a:b|x", "ab|x");
+        Cache<String, String> secondCache = newCache("a|x", "a|y", "a:b|x", "ab|x");
+        first.register(CACHE_NAME, firstCache, SnapshotCodec.STRING, key -> key.substring(0, key.indexOf('|')));
+        second.register(CACHE_NAME, secondCache, SnapshotCodec.STRING, key -> key.substring(0, key.indexOf('|')));
+
+        first.invalidateGroup(CACHE_NAME, "a");
+        first.flush();
+
+        assertThat(firstCache.asMap().keySet(), is(Set.of("a:b|x", "ab|x")));
+        assertThat(secondCache.asMap().keySet(), is(Set.of("a:b|x", "ab|x")));
+    }
+
+    @Test
+    void testListenerGetsTheInvalidationsOfTheOtherInstances() {
+        InvalidationBus first = newBus(new LoopbackTransport(group));
+        InvalidationBus second = newBus(new LoopbackTransport(group));
+        // Stands for a second level : keys which already left the cache
+        Set<String> behind = new HashSet<>(Set.of("Joe", "Jane", "Bob"));
+        InvalidationListener<String> listener = new InvalidationListener<>() {
+            @Override
+            public void invalidate(String key) {
+                behind.remove(key);
+            }
+
+            @Override
+            public void invalidateIf(Predicate<? super String> matching) {
+                behind.removeIf(matching);
+            }
+
+            @Override
+            public void invalidateAll() {
+                behind.clear();
+            }
+        };
+        first.register(CACHE_NAME, newCache(), SnapshotCodec.STRING);
+        second.register(CACHE_NAME, newCache(), SnapshotCodec.STRING, listener);
+
+        first.invalidate(CACHE_NAME, "Joe");
+        first.flush();
+        assertThat(behind, is(Set.of("Jane", "Bob")));
+
+        first.invalidatePrefix(CACHE_NAME, "Ja");
+        first.flush();
+        assertThat(behind, is(Set.of("Bob")));
+
+        first.invalidateAll(CACHE_NAME);
+        first.flush();
+        assertThat(behind.isEmpty(), is(true));
+    }
+
+    @Test
+    void testMassInvalidationIsSentInFewPackets() {
+        InvalidationBus first = newBus(new LoopbackTransport(group));
+        InvalidationBus second = newBus(new LoopbackTransport(group));
+        List<String> keys = new ArrayList<>();
+        for(int i = 0; i < 10_000; i++){
+            keys.add("user-" + i);
+        }
+        Cache<String, String> secondCache = newCache(keys.toArray(new String[0]));
+        first.register(CACHE_NAME, newCache(), SnapshotCodec.STRING);
+        second.register(CACHE_NAME, secondCache, SnapshotCodec.STRING);
+
+        first.invalidateAll(CACHE_NAME, keys);
+        first.flush();
+
+        assertThat(secondCache.estimatedSize(), is(0L));
+        // The cache name once per packet, then about 15 bytes per key in packets of 1400 bytes
+        assertThat(first.packetsSent(), lessThan(200L));
+        assertThat(second.packetsReceived(), is(first.packetsSent()));
+    }
+
+    @Test
+    void testInvalidateAllReplacesTheQueuedKeys() {
+        LoopbackTransport transport = new LoopbackTransport(group);
+        InvalidationBus bus = newBus(transport);
+        bus.register(CACHE_NAME, newCache("Joe", "Jane"), SnapshotCodec.STRING);
+
+        bus.invalidate(CACHE_NAME, "Joe");
+        bus.invalidate(CACHE_NAME, "Jane");
+        bus.invalidateAll(CACHE_NAME);
+        bus.flush();
+
+        int allOnly = InvalidationBus.HEADER_BYTES + SnapshotCodec.sizeOfString(CACHE_NAME) + Byte.BYTES + Short.BYTES;
+        assertThat(transport.sentLengths, is(List.of(allOnly)));
+    }
+
+    @Test
+    void testUnknownCachesAndForeignPacketsAreIgnored() {
+        InvalidationBus first = newBus(new LoopbackTransport(group));
+        InvalidationBus second = newBus(new LoopbackTransport(group));
+        Cache<String, String> secondCache = newCache("Joe");
+        first.register(CACHE_NAME, newCache("Joe"), SnapshotCodec.STRING);
+        first.register("only-on-first", newCache("Joe"), SnapshotCodec.STRING);
+        second.register(CACHE_NAME, secondCache, SnapshotCodec.STRING);
+
+        first.invalidate("only-on-first", "Joe");
+        first.invalidate(CACHE_NAME, "Joe");
+        first.flush();
+        assertThat(secondCache.getIfPresent("Joe"), nullValue());
+
+        second.receive(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        second.receive(ByteBuffer.wrap("not an invalidation packet at all".getBytes()));
+        assertThat(second.packetsReceived(), is(1L));
+    }
+}
@@ -0,0 +1,51 @@
+package me.beardedowl.caffeine.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LatencyDistributionTest {
+
+    private static long[] sample(LatencyDistribution distribution, int count){
+        long[] samples = new long[count];
+        for(int i = 0; i < count; i++){
+            samples[i] = distribution.nextNanos();
+        }
+        Arrays.sort(samples);
+        return samples;
+    }
+
+    @Test
+    void testLogNormalHasTheGivenMedianAndTail() {
+        long[] samples = sample(LatencyDistribution.logNormal(Duration.ofMillis(10), Duration.ofMillis(100)), 100_000);
+
+        long median = samples[samples.length / 2];
+        long p99 = samples[samples.length * 99 / 100];
+        assertThat(median, greaterThanOrEqualTo(Duration.ofMillis(9).toNanos()));
+        assertThat(median, lessThanOrEqualTo(Duration.ofMillis(11).toNanos()));
+        assertThat(p99, greaterThanOrEqualTo(Duration.ofMillis(85).toNanos()));
+        assertThat(p99, lessThanOrEqualTo(Duration.ofMillis(115).toNanos()));
+    }
+
+    @Test
+    void testUniformStaysWithinItsBounds() {
+        long[] samples = sample(LatencyDistribution.uniform(Duration.ofMillis(5), Duration.ofMillis(15)), 10_000);
+
+        assertThat(samples[0], greaterThanOrEqualTo(Duration.ofMillis(5).toNanos()));
+        assertThat(samples[samples.length - 1], lessThanOrEqualTo(Duration.ofMillis(15).toNanos()));
+        assertThat(LatencyDistribution.fixed(Duration.ofMillis(3)).nextNanos(), is(Duration.ofMillis(3).toNanos()));
+    }
+
+    @Test
+    void testTailBelowTheMedianIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> LatencyDistribution.logNormal(Duration.ofMillis(10), Duration.ofMillis(5)));
+    }
+}
@@ -0,0 +1,93 @@
+package me.beardedowl.caffeine.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MicroBatcherTest {
+
+    private static Map<Integer, String> echo(Set<? extends Integer> keys){
+        Map<Integer, String> values = new HashMap<>();
+        keys.forEach(key -> values.put(key, "value-" + key));
+        return values;
+    }
+
+    @Test
+    void testConcurrentMissesShareBatches() throws Exception {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<Integer, String>("test", MicroBatcherTest::echo,
+                Duration.ofMillis(50), 1000, Runnable::run);
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for(int i = 0; i < 64; i++){
+            int key = i;
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try{
+                    start.await();
+                }catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+                return batcher.load(key);
+            }, callers).thenCompose(future -> future));
+        }
+        start.countDown();
+        for(int i = 0; i < 64; i++){
+            assertThat(futures.get(i).get(5, TimeUnit.SECONDS), is("value-" + i));
+        }
+        callers.shutdown();
+
+        assertThat(batcher.keyCount(), is(64L));
+        assertThat(batcher.batchCount(), lessThanOrEqualTo(4L));
+    }
+
+    @Test
+    void testFullBatchIsSentBeforeTheWindowEnds() throws Exception {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<Integer, String>("test", MicroBatcherTest::echo,
+                Duration.ofMinutes(1), 2, Runnable::run);
+
+        CompletableFuture<String> first = batcher.load(1);
+        CompletableFuture<String> second = batcher.load(2);
+
+        assertThat(first.get(1, TimeUnit.SECONDS), is("value-1"));
+        assertThat(second.get(1, TimeUnit.SECONDS), is("value-2"));
+        assertThat(batcher.batchCount(), is(1L));
+    }
+
+    @Test
+    void testKeysMissingFromTheResultCompleteWithNull() throws Exception {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<Integer, String>("test", keys -> Map.of(),
+                Duration.ZERO, 64, Runnable::run);
+
+        assertThat(batcher.load(1).get(1, TimeUnit.SECONDS), is(nullValue()));
+    }
+
+    @Test
+    void testLoaderFailureFailsEveryKeyOfTheBatch() {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<Integer, String>("test", keys -> {
+            throw new IllegalStateException("backend down");
+        }, Duration.ofMillis(10), 64, Runnable::run);
+
+        CompletableFuture<String> first = batcher.load(1);
+        CompletableFuture<String> second = batcher.load(2);
+
+        assertThrows(CompletionException.class, first::join);
+        assertThrows(CompletionException.class, second::join);
+    }
+}
@@ -0,0 +1,87 @@
+package me.beardedowl.caffeine.exception.handling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class InvalidNameRegistryTest {
+
+    private static final int WRITERS = 8;
+    private static final int READERS = 8;
+    private static final int NAMES_PER_WRITER = 20_000;
+
+    @Test
+    void testConcurrentWritersAndReaders() throws Exception {
+        // Sized below the number of names on purpose, the filter then has more false positives but stays correct
+        InvalidNameRegistry registry = new InvalidNameRegistry(50_000, 0.01);
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicBoolean readerSawValidName = new AtomicBoolean();
+
+        List<Future<?>> writers = new ArrayList<>();
+        for(int w = 0; w < WRITERS; w++){
+            int writer = w;
+            writers.add(pool.submit(() -> {
+                start.await();
+                for(int i = 0; i < NAMES_PER_WRITER; i++){
+                    registry.add("bot-" + writer + "-" + i);
+                    // Every writer also adds names of the others, so the same name is often added concurrently
+                    registry.add("bot-" + ((writer + 1) % WRITERS) + "-" + i);
+                }
+                return null;
+            }));
+        }
+        List<Future<?>> readers = new ArrayList<>();
+        for(int r = 0; r < READERS; r++){
+            readers.add(pool.submit(() -> {
+                start.await();
+                int i = 0;
+                while(writing.get()){
+                    if(registry.contains("user-" + i++)){
+                        readerSawValidName.set(true);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for(Future<?> writer : writers){
+            writer.get(1, TimeUnit.MINUTES);
+        }
+        writing.set(false);
+        for(Future<?> reader : readers){
+            reader.get(1, TimeUnit.MINUTES);
+        }
+        pool.shutdown();
+
+        assertThat(registry.size(), is(WRITERS * NAMES_PER_WRITER));
+        for(int w = 0; w < WRITERS; w++){
+            for(int i = 0; i < NAMES_PER_WRITER; i++){
+                assertThat(registry.contains("bot-" + w + "-" + i), is(true));
+            }
+        }
+        assertThat(readerSawValidName.get(), is(false));
+    }
+
+    @Test
+    void testAddAllCountsOnlyNewNames() {
+        InvalidNameRegistry registry = new InvalidNameRegistry(100, 0.01);
+        registry.add("Bot1");
+
+        assertThat(registry.addAll(List.of("Bot1", "Bot2", "Bot2", "Bot3")), is(2));
+        assertThat(registry.size(), is(3));
+        assertThat(registry.contains("Joe"), is(false));
+    }
+}
@@ -0,0 +1,82 @@
+package me.beardedowl.caffeine.loadtest;
+
+/**
+ * Latencies recorded by one load-test worker, merged into one histogram at the end of a run.
+ *
+ * Buckets are log-linear : every power of two of nanoseconds is split into SUB_BUCKETS equal buckets, so a percentile
+ * is within 1/SUB_BUCKETS (about 1.6%) of the recorded value whatever its magnitude, from a microsecond to minutes,
+ * in a few KB. Not thread safe, each worker records into its own.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below SUB_BUCKETS ns get a bucket each, every power of two above gets SUB_BUCKETS of them
+    private static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long max;
+
+    void record(long nanos){
+        long value = Math.max(0, nanos);
+        counts[indexOf(value)]++;
+        count++;
+        max = Math.max(max, value);
+    }
+
+    void add(LatencyHistogram other){
+        for(int i = 0; i < BUCKETS; i++){
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        max = Math.max(max, other.max);
+    }
+
+    long count(){
+        return count;
+    }
+
+    long maxNanos(){
+        return max;
+    }
+
+    /**
+     * @param quantile  : From 0 to 1, e.g. 0.999 for the p999
+     * @return  Highest value of the bucket holding the quantile, 0 when nothing was recorded
+     */
+    long percentileNanos(double quantile){
+        if(count == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += counts[i];
+            if(seen >= rank){
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int indexOf(long value){
+        if(value < SUB_BUCKETS){
+            return (int) value;
+        }
+        // Position of the highest bit, at least SUB_BUCKET_BITS here
+        int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueOf(int index){
+        if(index < SUB_BUCKETS){
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
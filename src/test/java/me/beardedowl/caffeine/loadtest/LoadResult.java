@@ -0,0 +1,100 @@
+package me.beardedowl.caffeine.loadtest;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What one target did during the recorded part of a load test, and the regression gates checked against it
+ */
+final class LoadResult {
+
+    static final String HEADER = String.format(Locale.ROOT, "%-16s %10s %8s %10s %9s %9s %9s %9s %8s %9s %9s",
+            "target", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "hit rate", "loads", "backend");
+    static final String CSV_HEADER = "target,requests,errors,throughput,p50_ms,p99_ms,p999_ms,max_ms,hit_rate,loads,backend_calls";
+
+    private final LoadTarget target;
+    private final LatencyHistogram latencies;
+    private final long errors;
+    private final long nanos;
+    private final CacheStats stats;
+    private final long backendCalls;
+
+    /**
+     * @param latencies     : Latency of every request
+     * @param errors        : Requests which failed or were not answered 200
+     * @param nanos         : Length of the recorded load
+     * @param stats         : Statistics of the cache of the target over the recorded load
+     * @param backendCalls  : Calls made to the backend over the recorded load
+     */
+    LoadResult(LoadTarget target, LatencyHistogram latencies, long errors, long nanos, CacheStats stats, long backendCalls){
+        this.target = target;
+        this.latencies = latencies;
+        this.errors = errors;
+        this.nanos = nanos;
+        this.stats = stats;
+        this.backendCalls = backendCalls;
+    }
+
+    double throughput(){
+        return latencies.count() * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    double errorRate(){
+        return latencies.count() == 0 ? 0 : (double) errors / latencies.count();
+    }
+
+    double percentileMillis(double quantile){
+        return latencies.percentileNanos(quantile) / 1e6d;
+    }
+
+    double hitRate(){
+        return stats.hitRate();
+    }
+
+    /**
+     * @param options   : Arguments of the load test, only the gates are looked at
+     * @return  One message per gate which failed
+     */
+    List<String> check(Map<String, String> options){
+        List<String> failures = new ArrayList<>();
+        atLeast(failures, options, "min-throughput", throughput());
+        atMost(failures, options, "max-p99-millis", percentileMillis(0.99));
+        atMost(failures, options, "max-p999-millis", percentileMillis(0.999));
+        atLeast(failures, options, "min-hit-rate", hitRate());
+        if(errorRate() > Double.parseDouble(options.getOrDefault("max-error-rate", "0"))){
+            failures.add(String.format(Locale.ROOT, "%s : error rate %.4f above max-error-rate %s",
+                    target.id(), errorRate(), options.getOrDefault("max-error-rate", "0")));
+        }
+        return failures;
+    }
+
+    private void atLeast(List<String> failures, Map<String, String> options, String gate, double value){
+        if(options.containsKey(gate) && value < Double.parseDouble(options.get(gate))){
+            failures.add(String.format(Locale.ROOT, "%s : %.3f below %s %s", target.id(), value, gate, options.get(gate)));
+        }
+    }
+
+    private void atMost(List<String> failures, Map<String, String> options, String gate, double value){
+        if(options.containsKey(gate) && value > Double.parseDouble(options.get(gate))){
+            failures.add(String.format(Locale.ROOT, "%s : %.3f above %s %s", target.id(), value, gate, options.get(gate)));
+        }
+    }
+
+    String toCsv(){
+        return String.format(Locale.ROOT, "%s,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.4f,%d,%d",
+                target.id(), latencies.count(), errors, throughput(), percentileMillis(0.5), percentileMillis(0.99),
+                percentileMillis(0.999), latencies.maxNanos() / 1e6d, hitRate(), stats.loadCount(), backendCalls);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%-16s %10d %8d %10.1f %9.3f %9.3f %9.3f %9.3f %8.4f %9d %9d",
+                target.id(), latencies.count(), errors, throughput(), percentileMillis(0.5), percentileMillis(0.99),
+                percentileMillis(0.999), latencies.maxNanos() / 1e6d, hitRate(), stats.loadCount(), backendCalls);
+    }
+}
@@ -0,0 +1,63 @@
+package me.beardedowl.caffeine.loadtest;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Endpoints the load test can drive, each with the cache behind it and the MicroBatcher loading its misses (if any)
+ *
+ * /sanchay and /sanchay/mt/safe share the caches of CacheSingleton and their loaders (see UserLoaders), so the load
+ * test empties the cache of a target before running it.
+ */
+enum LoadTarget {
+
+    SANCHAY("sanchay", "/sanchay/user/", "message", "message"),
+    SANCHAY_MT_SAFE("sanchay-mt-safe", "/sanchay/mt/safe/user/", "message", "message"),
+    GREET("greet", "/greet/", "greet-message", null),
+    SIMPLE_GREET("simple-greet", "/simple-greet/", "simple-greet-message", null);
+
+    private final String id;
+    private final String path;
+    private final String cacheName;
+    // Name of the MicroBatcher, null when the loader calls the backend once per key
+    private final String loaderName;
+
+    LoadTarget(String id, String path, String cacheName, String loaderName){
+        this.id = id;
+        this.path = path;
+        this.cacheName = cacheName;
+        this.loaderName = loaderName;
+    }
+
+    String id(){
+        return id;
+    }
+
+    /**
+     * @return  Path of the request for the user
+     */
+    String path(String userName){
+        return path + userName;
+    }
+
+    String cacheName(){
+        return cacheName;
+    }
+
+    String loaderName(){
+        return loaderName;
+    }
+
+    /**
+     * @throws IllegalArgumentException when no target has this id
+     */
+    static LoadTarget of(String id){
+        for(LoadTarget target : values()){
+            if(target.id.equals(id)){
+                return target;
+            }
+        }
+        throw new IllegalArgumentException("Unknown target " + id + ", expected one of "
+                + Arrays.stream(values()).map(LoadTarget::id).collect(Collectors.joining(", ")));
+    }
+}
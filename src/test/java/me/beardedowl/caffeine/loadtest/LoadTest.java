@@ -0,0 +1,266 @@
+package me.beardedowl.caffeine.loadtest;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.helidon.metrics.api.RegistryFactory;
+import io.helidon.microprofile.server.Server;
+import me.beardedowl.caffeine.benchmark.KeyDistribution;
+import me.beardedowl.caffeine.common.CacheRegistry;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricID;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Starts the server in this JVM and drives its endpoints with many concurrent clients, one target at a time.
+ *
+ * mvn -Ploadtest verify -DskipTests
+ * mvn -Ploadtest verify -DskipTests -Dloadtest.args="targets=sanchay,sanchay-mt-safe threads=128 duration-seconds=60"
+ * mvn -Ploadtest verify -DskipTests -Dloadtest.args="max-p99-millis=250 min-hit-rate=0.9 report=target/loadtest.csv"
+ *
+ * Every worker is a closed loop : it sends a request for a key drawn from the key distribution, waits for the answer
+ * and sends the next one. Each target gets its cache emptied, warmup-seconds of unrecorded load, then
+ * duration-seconds of recorded load, and reports
+ *  throughput              : answered requests per second
+ *  p50 / p99 / p999 / max  : latency of the requests, as seen by the client
+ *  hit rate                : hits / lookups of the cache behind the endpoint (Cache.stats())
+ *  loads                   : keys loaded by the cache (misses which reached the loader)
+ *  backend calls           : calls to the bulk loader (cache.loader.batches, 0 when metrics are disabled), the
+ *                            loads for an unbatched endpoint
+ *
+ * Arguments are key=value pairs
+ *  targets             : comma separated, among sanchay, sanchay-mt-safe, greet and simple-greet (all by default)
+ *  threads             : concurrent clients, 64 by default
+ *  duration-seconds    : recorded load per target, 30 by default
+ *  warmup-seconds      : load before the recording, 5 by default, 0 to measure from a cold cache
+ *  keys                : distinct user names, 10000 by default
+ *  distribution        : uniform or zipfian (the default), see KeyDistribution
+ *  log-level           : level of the application logs during the run, ERROR by default (every miss logs a WARN)
+ *  report              : CSV file the results are appended to, one line per target
+ *  app.* / server.*    : configuration of the application (system properties), e.g.
+ *                        app.user-repository.latency.median-millis=5 app.cache.loader.batch.window-millis=0
+ *
+ * The backend (LocalUserRepository) answers in 20 ms median and 200 ms p99 unless configured otherwise.
+ *
+ * Regression gates, checked on every target. The process exits with 1 when one of them fails
+ *  min-throughput      : requests per second
+ *  max-p99-millis      : p99 latency
+ *  max-p999-millis     : p999 latency
+ *  min-hit-rate        : from 0 to 1
+ *  max-error-rate      : failed requests / requests, 0 by default
+ */
+public final class LoadTest {
+
+    // Any free port, so that the load test does not clash with a server already running
+    private static final Map<String, String> DEFAULT_APPLICATION_CONFIG = Map.of(
+            "server.port", "0",
+            "app.user-repository.latency.distribution", "lognormal",
+            "app.user-repository.latency.median-millis", "20",
+            "app.user-repository.latency.p99-millis", "200");
+
+    // Key indices drawn up front per worker, a power of two so that a mask wraps around them
+    private static final int SAMPLES = 1 << 16;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final String baseUrl;
+    private final int threads;
+    private final Duration duration;
+    private final Duration warmup;
+    private final String[] userNames;
+    private final KeyDistribution distribution;
+
+    LoadTest(String baseUrl, int threads, Duration duration, Duration warmup, int keys, KeyDistribution distribution){
+        this.baseUrl = baseUrl;
+        this.threads = threads;
+        this.duration = duration;
+        this.warmup = warmup;
+        this.userNames = new String[keys];
+        for(int i = 0; i < keys; i++){
+            userNames[i] = "user" + i;
+        }
+        this.distribution = distribution;
+    }
+
+    /**
+     * @param args  : key=value pairs, see the class comment
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        // Read by the application when the server starts, so set before anything touches the configuration
+        DEFAULT_APPLICATION_CONFIG.forEach((key, value) -> {
+            if(System.getProperty(key) == null){
+                System.setProperty(key, value);
+            }
+        });
+        options.forEach((key, value) -> {
+            if(key.startsWith("app.") || key.startsWith("server.")){
+                System.setProperty(key, value);
+            }
+        });
+        Configurator.setRootLevel(Level.toLevel(options.getOrDefault("log-level", "ERROR")));
+
+        List<LoadTarget> targets = Optional.ofNullable(options.get("targets"))
+                .map(ids -> Arrays.stream(ids.split(",")).map(String::strip).map(LoadTarget::of).collect(Collectors.toList()))
+                .orElse(List.of(LoadTarget.values()));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "64"));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration-seconds", "30")));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup-seconds", "5")));
+        int keys = Integer.parseInt(options.getOrDefault("keys", "10000"));
+        KeyDistribution distribution = KeyDistribution.valueOf(options.getOrDefault("distribution", "zipfian").toUpperCase());
+
+        Server server = Server.create().start();
+        List<String> failures = new ArrayList<>();
+        try{
+            LoadTest loadTest = new LoadTest("http://localhost:" + server.port(), threads, duration, warmup, keys, distribution);
+            System.out.printf("%n%d threads, %d %s keys, %d s warmup, %d s per target%n",
+                    threads, keys, distribution, warmup.toSeconds(), duration.toSeconds());
+            System.out.println(LoadResult.HEADER);
+            for(LoadTarget target : targets){
+                LoadResult result = loadTest.run(target);
+                System.out.println(result);
+                failures.addAll(result.check(options));
+                if(options.containsKey("report")){
+                    appendReport(Paths.get(options.get("report")), result, threads, keys, distribution);
+                }
+            }
+        }finally{
+            server.stop();
+        }
+        if(!failures.isEmpty()){
+            failures.forEach(failure -> System.out.println("FAILED " + failure));
+            System.exit(1);
+        }
+        // The server leaves non-daemon threads behind
+        System.exit(0);
+    }
+
+    static Map<String, String> parse(String[] args){
+        Map<String, String> options = new LinkedHashMap<>();
+        for(String arg : args){
+            int equals = arg.indexOf('=');
+            if(equals <= 0){
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        return options;
+    }
+
+    LoadResult run(LoadTarget target) throws InterruptedException {
+        Cache<Object, Object> cache = CacheRegistry.getInstance().get(target.cacheName());
+        cache.invalidateAll();
+        if(!warmup.isZero()){
+            drive(target, warmup);
+        }
+        CacheStats statsBefore = cache.stats();
+        long backendCallsBefore = backendCalls(target);
+        Phase phase = drive(target, duration);
+        CacheStats stats = cache.stats().minus(statsBefore);
+        long backendCalls = target.loaderName() == null ? stats.loadCount() : backendCalls(target) - backendCallsBefore;
+        return new LoadResult(target, phase.histogram, phase.errors, phase.nanos, stats, backendCalls);
+    }
+
+    private long backendCalls(LoadTarget target){
+        if(target.loaderName() == null){
+            return 0;
+        }
+        MetricRegistry registry = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+        Counter batches = registry.getCounter(new MetricID("cache.loader.batches", new Tag("loader", target.loaderName())));
+        return batches == null ? 0 : batches.getCount();
+    }
+
+    /**
+     * Runs every worker for the duration
+     */
+    private Phase drive(LoadTarget target, Duration length) throws InterruptedException {
+        Worker[] workers = new Worker[threads];
+        Thread[] running = new Thread[threads];
+        long start = System.nanoTime();
+        long deadline = start + length.toNanos();
+        for(int i = 0; i < threads; i++){
+            workers[i] = new Worker(target, distribution.sample(userNames.length, SAMPLES, 31L * i + target.ordinal()), deadline);
+            running[i] = new Thread(workers[i], "load-" + target.id() + "-" + i);
+            running[i].start();
+        }
+        Phase phase = new Phase();
+        for(int i = 0; i < threads; i++){
+            running[i].join();
+            phase.histogram.add(workers[i].histogram);
+            phase.errors += workers[i].errors;
+        }
+        phase.nanos = System.nanoTime() - start;
+        return phase;
+    }
+
+    private static void appendReport(Path file, LoadResult result, int threads, int keys, KeyDistribution distribution)
+            throws IOException {
+        boolean header = !Files.exists(file);
+        String line = (header ? "threads,keys,distribution," + LoadResult.CSV_HEADER + System.lineSeparator() : "")
+                + threads + "," + keys + "," + distribution + "," + result.toCsv() + System.lineSeparator();
+        Files.writeString(file, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static final class Phase {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private long errors;
+        private long nanos;
+    }
+
+    private final class Worker implements Runnable {
+
+        private final LoadTarget target;
+        private final int[] keys;
+        private final long deadline;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private long errors;
+
+        private Worker(LoadTarget target, int[] keys, long deadline){
+            this.target = target;
+            this.keys = keys;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            for(int i = 0; System.nanoTime() < deadline; i++){
+                HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + target.path(userNames[keys[i & (SAMPLES - 1)]])))
+                        .GET()
+                        .build();
+                long start = System.nanoTime();
+                try{
+                    HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                    if(response.statusCode() != 200){
+                        errors++;
+                    }
+                }catch (IOException e){
+                    errors++;
+                }catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                histogram.record(System.nanoTime() - start);
+            }
+        }
+    }
+}
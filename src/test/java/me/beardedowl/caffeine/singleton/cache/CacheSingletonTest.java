@@ -0,0 +1,50 @@
+package me.beardedowl.caffeine.singleton.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+class CacheSingletonTest {
+
+    private static final int DISTINCT_KEYS = 50_000;
+
+    // ~1 KB per entry
+    private static final String LONG_SURNAME = "s".repeat(1024);
+
+    @Test
+    void testMaximumSizeBoundsEntries() {
+        Cache<String, List<UserDTO>> cache = new CacheSingleton(Optional.of(1_000L), Optional.empty()).getMessageCache();
+
+        flood(cache);
+
+        assertThat(cache.estimatedSize(), lessThanOrEqualTo(1_000L));
+    }
+
+    @Test
+    void testMaximumWeightBoundsEstimatedBytes() {
+        long maximumWeight = 1024 * 1024;
+        Cache<String, List<UserDTO>> cache = new CacheSingleton(Optional.empty(), Optional.of(maximumWeight)).getMessageCache();
+
+        flood(cache);
+
+        long weightedSize = cache.policy().eviction().orElseThrow().weightedSize().orElseThrow();
+        assertThat(weightedSize, lessThanOrEqualTo(maximumWeight));
+        // Every entry weighs more than 1 KB, so far fewer than 1024 entries can fit
+        assertThat(cache.estimatedSize(), lessThan(1024L));
+    }
+
+    private static void flood(Cache<String, List<UserDTO>> cache){
+        for(int i = 0; i < DISTINCT_KEYS; i++){
+            String name = "user-" + i;
+            cache.put(name, List.of(new UserDTO(name, LONG_SURNAME + i)));
+        }
+        // Eviction happens in the maintenance task, run it now instead of waiting for the executor
+        cache.cleanUp();
+    }
+}
@@ -0,0 +1,83 @@
+package me.beardedowl.caffeine.singleton.cache;
+
+import me.beardedowl.caffeine.common.LatencyDistribution;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LocalUserRepositoryTest {
+
+    private static final LatencyDistribution NO_LATENCY = LatencyDistribution.fixed(Duration.ZERO);
+
+    @Test
+    void testEveryNameExistsWithoutAFile() {
+        LocalUserRepository repository = new LocalUserRepository(NO_LATENCY, 0, 0, Duration.ZERO, null);
+
+        Map<String, List<UserDTO>> users = repository.findAllByName(Set.of("Joe", "Jane"));
+
+        assertThat(users.get("Joe").get(0).getUserName(), is("Joe"));
+        assertThat(users.get("Jane").size(), is(1));
+        assertThat(repository.findByNameAndSurname(UserNameKey.of("Joe", "Doe")).get(0).getSurName(), is("Doe"));
+    }
+
+    @Test
+    void testOnlyTheUsersOfTheFileExist() throws Exception {
+        Path file = Files.createTempFile("users", ".csv");
+        Files.writeString(file, "# userName,surName\nJoe,Doe\nJoe,Black\nJane\n");
+        LocalUserRepository repository = new LocalUserRepository(NO_LATENCY, 0, 0, Duration.ZERO,
+                LocalUserRepository.readUsers(file));
+        Files.delete(file);
+
+        assertThat(repository.findByName("Joe").size(), is(2));
+        assertThat(repository.findByName("Jane").get(0).getSurName(), is((String) null));
+        assertThat(repository.findByName("Bob").isEmpty(), is(true));
+        assertThat(repository.findByNameAndSurname(UserNameKey.of("Joe", "Black")).size(), is(1));
+        assertThat(repository.findByNameAndSurname(UserNameKey.of("Joe", "White")).isEmpty(), is(true));
+    }
+
+    @Test
+    void testCallsFailAtTheErrorRate() {
+        LocalUserRepository repository = new LocalUserRepository(NO_LATENCY, 1, 0, Duration.ZERO, null);
+
+        assertThrows(UncheckedIOException.class, () -> repository.findByName("Joe"));
+    }
+
+    @Test
+    void testCallsOverTheConcurrencyLimitAreRejected() throws Exception {
+        LocalUserRepository repository = new LocalUserRepository(LatencyDistribution.fixed(Duration.ofMillis(200)),
+                0, 2, Duration.ofMillis(10), null);
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        List<Future<List<UserDTO>>> calls = new ArrayList<>();
+        for(int i = 0; i < 4; i++){
+            String name = "user-" + i;
+            calls.add(callers.submit(() -> repository.findByName(name)));
+        }
+        int rejected = 0;
+        for(Future<List<UserDTO>> call : calls){
+            try{
+                call.get();
+            }catch (ExecutionException e){
+                assertThat(e.getCause() instanceof UncheckedIOException, is(true));
+                rejected++;
+            }
+        }
+        callers.shutdown();
+
+        assertThat(rejected, is(2));
+    }
+}
@@ -0,0 +1,94 @@
+package me.beardedowl.caffeine.singleton.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+class OffHeapUserStoreTest {
+
+    private static final long ONE_MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    @Test
+    void testTakeReturnsTheStoredUsersOnce() {
+        OffHeapUserStore<String> store = new OffHeapUserStore<>(1024);
+        store.put("Joe:Doe", List.of(new UserDTO(7, "Joe", "Doe")), ONE_MINUTE);
+
+        List<UserDTO> users = store.take("Joe:Doe").getUsers();
+
+        assertThat(users.size(), is(1));
+        assertThat(users.get(0).getId(), is(7L));
+        assertThat(users.get(0).getUserName(), is("Joe"));
+        assertThat(users.get(0).getSurName(), is("Doe"));
+        assertThat(store.take("Joe:Doe"), is(nullValue()));
+    }
+
+    @Test
+    void testNullSurnameSurvivesEncoding() {
+        OffHeapUserStore<String> store = new OffHeapUserStore<>(1024);
+        store.put("Joe", List.of(new UserDTO(1, "Joe", null)), ONE_MINUTE);
+
+        assertThat(store.take("Joe").getUsers().get(0).getSurName(), is(nullValue()));
+    }
+
+    @Test
+    void testOldestRecordsAreOverwrittenWhenFull() {
+        // Every record below takes 23 bytes or more, so at most 8 of them fit in 200 bytes
+        OffHeapUserStore<String> store = new OffHeapUserStore<>(200);
+        for(int i = 0; i < 20; i++){
+            store.put("k" + i, List.of(new UserDTO(i, "name" + i, "sur" + i)), ONE_MINUTE);
+            assertThat(store.usedBytes(), lessThanOrEqualTo(200L));
+        }
+
+        assertThat(store.take("k0"), is(nullValue()));
+        assertThat(store.take("k19").getUsers().get(0).getId(), is(19L));
+    }
+
+    @Test
+    void testExpiredRecordsAreNotReturned() throws InterruptedException {
+        OffHeapUserStore<String> store = new OffHeapUserStore<>(1024);
+        store.put("Joe", List.of(new UserDTO(1, "Joe", null)), TimeUnit.MILLISECONDS.toNanos(1));
+
+        Thread.sleep(5);
+
+        assertThat(store.take("Joe"), is(nullValue()));
+    }
+
+    @Test
+    void testTakeReturnsTheRemainingLifetime() throws InterruptedException {
+        OffHeapUserStore<String> store = new OffHeapUserStore<>(1024);
+        store.put("Joe", List.of(new UserDTO(1, "Joe", null)), ONE_MINUTE);
+
+        Thread.sleep(5);
+
+        // Whatever was left when spilled, minus the time spent in the store : never a fresh lifetime
+        long remainingNanos = store.take("Joe").getRemainingNanos();
+        assertThat(remainingNanos, lessThanOrEqualTo(ONE_MINUTE - TimeUnit.MILLISECONDS.toNanos(5)));
+        assertThat(remainingNanos, greaterThan(0L));
+    }
+
+    @Test
+    void testInvalidatedRecordsAreNotReturned() {
+        OffHeapUserStore<String> store = new OffHeapUserStore<>(1024);
+        for(String name : List.of("Joe", "Jane", "Jim")){
+            store.put(name, List.of(new UserDTO(1, name, null)), ONE_MINUTE);
+        }
+
+        store.invalidateIf(key -> key.startsWith("Ja"));
+        assertThat(store.take("Jane"), is(nullValue()));
+        assertThat(store.size(), is(2));
+
+        store.invalidateAll();
+        assertThat(store.take("Joe"), is(nullValue()));
+        assertThat(store.usedBytes(), is(0L));
+        // Written from the beginning of the buffer again
+        store.put("Jim", List.of(new UserDTO(2, "Jim", null)), ONE_MINUTE);
+        assertThat(store.take("Jim").getUsers().get(0).getId(), is(2L));
+    }
+}
@@ -0,0 +1,43 @@
+package me.beardedowl.caffeine.singleton.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+class UserNameKeyTest {
+
+    @Test
+    void testNamesContainingTheSeparatorStayDistinct() {
+        // Both were "a:b:c" as formatted Strings
+        UserNameKey first = UserNameKey.of("a:b", "c");
+        UserNameKey second = UserNameKey.of("a", "b:c");
+
+        assertThat(first, is(not(second)));
+        assertThat(first.getUserName(), is("a:b"));
+        assertThat(second.getSurName(), is("b:c"));
+    }
+
+    @Test
+    void testEqualKeysHaveEqualHashes() {
+        UserNameKey first = UserNameKey.of("Joe", "Doe");
+        UserNameKey second = UserNameKey.of(new String("Joe"), new String("Doe"));
+
+        assertThat(first, is(second));
+        assertThat(first.hashCode(), is(second.hashCode()));
+        assertThat(first.toString(), is("Joe:Doe"));
+    }
+
+    @Test
+    void testCodecRoundTrip() {
+        UserNameKey key = UserNameKey.of("Jo:e", "Doe");
+        ByteBuffer buffer = ByteBuffer.allocate(UserNameKeyCodec.INSTANCE.sizeOf(key));
+        UserNameKeyCodec.INSTANCE.write(buffer, key);
+        buffer.flip();
+
+        assertThat(UserNameKeyCodec.INSTANCE.read(buffer), is(key));
+    }
+}